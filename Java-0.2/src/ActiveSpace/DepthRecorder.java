@@ -0,0 +1,339 @@
+package ActiveSpace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A DepthRecorder writes a session of raw depth frames to a file, so
+ * that tracking or region-editing problems can be replayed (DepthReplay)
+ * after the fact.
+ *
+ *   Each frame is encoded against the one before it: pixels that have
+ *   not changed become runs, small changes become one byte deltas, and
+ *   only large changes are stored as (two byte) depths.  Most of a
+ *   Kinect's view does not change from frame to frame, so a session
+ *   comes to a small fraction of its raw 600KB/frame.  The file is
+ *   written through a memory mapped window, which is moved along as
+ *   it fills, and truncated to the data actually written on close.
+ *
+ *   file format (big-endian):
+ *		header: magic, version, width, height, x/z, y/z (projective to
+ *				real-world factors, so a replay needs no sensor)
+ *		frames: time (ns since the first frame), length, encoded bytes
+ *
+ *   encoding (one token byte, then its data):
+ *		0x00-0x7e	1-127 unchanged pixels
+ *		0x7f		1-65536 unchanged pixels (in the next 2 bytes)
+ *		0x80-0xbf	1-64 one byte (signed) deltas follow
+ *		0xc0-0xff	1-64 two byte depths follow
+ *
+ *   main() measures encoding and decoding speed on a synthetic scene.
+ *
+ * @author cwkampe
+ */
+public class DepthRecorder {
+
+	public static final int MAGIC = 0x4b444550;		// "KDEP"
+	public static final int VERSION = 1;
+	public static final int HEADER = 24;			// bytes of header
+	public static final int FRAME_HEADER = 12;		// time, length
+
+	static final int RUN = 0x7f;		// long run token (and short run limit)
+	static final int DELTAS = 0x80;		// first delta token
+	static final int DEPTHS = 0xc0;		// first depth token
+	static final int GROUP = 64;		// most deltas/depths per token
+
+	private static final long WINDOW = 64L * 1024 * 1024;	// mapped window size
+
+	private RandomAccessFile file;	// the recording
+	private FileChannel channel;	// its channel
+	private MappedByteBuffer map;	// current mapped window
+	private long base;				// file offset of the window
+	private int width, height;		// frame size
+	private short prev[];			// previous frame
+	private short cur[];			// frame being encoded
+	private byte encoded[];			// encoded frame
+	private long start;				// time of first frame
+	private long frames;			// frames written
+	private long bytes;				// bytes written (incl headers)
+
+	/**
+	 * create a recording
+	 *
+	 * @param f			file to be written
+	 * @param w, h		frame size
+	 * @param xz, yz	projective to real-world factors (see OpenNI)
+	 */
+	public DepthRecorder( File f, int w, int h, float xz, float yz ) throws IOException {
+		width = w;
+		height = h;
+		prev = new short[w * h];
+		cur = new short[w * h];
+		encoded = new byte[maxEncoded(w * h)];
+		frames = 0;
+
+		file = new RandomAccessFile(f, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+		base = 0;
+		map = channel.map(FileChannel.MapMode.READ_WRITE, base, WINDOW);
+		map.putInt(MAGIC);
+		map.putInt(VERSION);
+		map.putInt(width);
+		map.putInt(height);
+		map.putFloat(xz);
+		map.putFloat(yz);
+		bytes = HEADER;
+	}
+
+	/**
+	 * @return worst case size of an encoded frame
+	 */
+	static int maxEncoded( int pixels ) {
+		return pixels * 2 + (pixels + GROUP - 1) / GROUP;
+	}
+
+	/**
+	 * record a frame (taken now)
+	 *
+	 * @param depth	the frame's depths
+	 */
+	public void write( ShortBuffer depth ) throws IOException {
+		depth.rewind();
+		depth.get(cur);
+		append(System.nanoTime());
+	}
+
+	/**
+	 * record a frame
+	 *
+	 * @param depth	the frame's depths
+	 * @param time	when it was taken (System.nanoTime)
+	 */
+	public void write( short depth[], long time ) throws IOException {
+		System.arraycopy(depth, 0, cur, 0, cur.length);
+		append(time);
+	}
+
+	/**
+	 * encode the current frame and append it to the file
+	 */
+	private void append( long time ) throws IOException {
+		if (frames == 0)
+			start = time;
+		int len = encode(cur, prev, encoded);
+
+		// move the window along if this frame won't fit
+		if (map.remaining() < FRAME_HEADER + len) {
+			base += map.position();
+			map = channel.map(FileChannel.MapMode.READ_WRITE, base, WINDOW);
+		}
+		map.putLong(time - start);
+		map.putInt(len);
+		map.put(encoded, 0, len);
+		bytes += FRAME_HEADER + len;
+		frames++;
+
+		short t[] = prev;
+		prev = cur;
+		cur = t;
+	}
+
+	/**
+	 * delta + run-length encode a frame
+	 *
+	 * @param cur	frame to be encoded
+	 * @param prev	previous frame
+	 * @param out	encoded bytes (maxEncoded long)
+	 * @return		number of encoded bytes
+	 */
+	static int encode( short cur[], short prev[], byte out[] ) {
+		int n = cur.length;
+		int o = 0;
+		int i = 0;
+		while (i < n) {
+			// runs of unchanged pixels (long enough to be worth a token)
+			int r = i;
+			while (r < n && cur[r] == prev[r])
+				r++;
+			int run = r - i;
+			if (run >= 3 || r == n) {
+				while (run > 0) {
+					int len = (run > 65536) ? 65536 : run;
+					if (len <= RUN) {
+						out[o++] = (byte) (len - 1);
+					} else {
+						out[o++] = (byte) RUN;
+						out[o++] = (byte) ((len - 1) >> 8);
+						out[o++] = (byte) (len - 1);
+					}
+					run -= len;
+				}
+				i = r;
+				continue;
+			}
+
+			int d = cur[i] - prev[i];
+			int j = i;
+			if (d >= -128 && d <= 127) {
+				// small changes (and short unchanged stretches between them)
+				while (j < n && j - i < GROUP) {
+					int dj = cur[j] - prev[j];
+					if (dj < -128 || dj > 127)
+						break;
+					if (dj == 0 && j + 2 < n && cur[j + 1] == prev[j + 1] && cur[j + 2] == prev[j + 2])
+						break;
+					j++;
+				}
+				out[o++] = (byte) (DELTAS + j - i - 1);
+				for( int k = i; k < j; k++ )
+					out[o++] = (byte) (cur[k] - prev[k]);
+			} else {
+				// big changes
+				while (j < n && j - i < GROUP) {
+					int dj = cur[j] - prev[j];
+					if (dj >= -128 && dj <= 127)
+						break;
+					j++;
+				}
+				out[o++] = (byte) (DEPTHS + j - i - 1);
+				for( int k = i; k < j; k++ ) {
+					out[o++] = (byte) (cur[k] >> 8);
+					out[o++] = (byte) cur[k];
+				}
+			}
+			i = j;
+		}
+		return o;
+	}
+
+	/**
+	 * decode a frame (in place, over the previous one)
+	 *
+	 * @param in	encoded bytes
+	 * @param len	number of encoded bytes
+	 * @param frame	previous frame, to be updated
+	 */
+	static void decode( byte in[], int len, short frame[] ) {
+		int i = 0;
+		int p = 0;
+		while (p < len) {
+			int t = in[p++] & 0xff;
+			if (t < RUN) {
+				i += t + 1;
+			} else if (t == RUN) {
+				i += (((in[p] & 0xff) << 8) | (in[p + 1] & 0xff)) + 1;
+				p += 2;
+			} else if (t < DEPTHS) {
+				for( int c = t - DELTAS + 1; c > 0; c-- )
+					frame[i++] += in[p++];
+			} else {
+				for( int c = t - DEPTHS + 1; c > 0; c-- ) {
+					frame[i++] = (short) ((in[p] << 8) | (in[p + 1] & 0xff));
+					p += 2;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of frames recorded
+	 */
+	public long frames() {
+		return frames;
+	}
+
+	/**
+	 * @return size of the recording (so far)
+	 */
+	public long bytes() {
+		return bytes;
+	}
+
+	/**
+	 * finish the recording
+	 */
+	public void close() throws IOException {
+		if (channel == null)
+			return;
+		map.force();
+		map = null;
+		try {
+			channel.truncate(bytes);
+		} catch (IOException e) {
+			// some systems won't truncate a mapped file ... replay stops at a zero length
+		}
+		file.close();
+		channel = null;
+	}
+
+	/**
+	 * benchmark: encode and decode a synthetic (noisy, moving) scene
+	 *
+	 * 	usage: DepthRecorder [frames [file]]
+	 */
+	public static void main( String args[] ) throws IOException {
+		int n = (args.length > 0) ? Integer.parseInt(args[0]) : 300;
+		File f = (args.length > 1) ? new File(args[1]) : File.createTempFile("depth", ".kdep");
+		int w = 640;
+		int h = 480;
+
+		// a background (floor and wall) with sensor noise and a walking person
+		Random r = new Random(0);
+		short background[] = new short[w * h];
+		for( int y = 0; y < h; y++ )
+			for( int x = 0; x < w; x++ )
+				background[y * w + x] = (short) ((y > h / 2) ? 1500 + 8 * (h - y) : 4000);
+		short scenes[][] = new short[n][w * h];
+		for( int i = 0; i < n; i++ ) {
+			short s[] = scenes[i];
+			for( int p = 0; p < s.length; p++ ) {
+				int noise = (r.nextInt(8) == 0) ? r.nextInt(9) - 4 : 0;
+				s[p] = (short) (background[p] + noise);
+			}
+			int px = (i * 4) % (w - 100);
+			for( int y = 100; y < 400; y++ )
+				for( int x = px; x < px + 80; x++ )
+					s[y * w + x] = (short) (2000 + (x - px));
+		}
+
+		// encode
+		DepthRecorder rec = new DepthRecorder(f, w, h, 1.12F, 0.84F);
+		long t0 = System.nanoTime();
+		for( int i = 0; i < n; i++ )
+			rec.write(scenes[i], t0 + i * 33333333L);
+		long t1 = System.nanoTime();
+		rec.close();
+		long raw = (long) n * w * h * 2;
+		System.out.println(String.format(
+				"encode: %d frames in %.0fms: %.0f fps, %.0f MB/s raw, %d bytes (%.1f%% of raw, %.0f KB/s at 30fps)",
+				n, (t1 - t0) / 1000000.0, n * 1e9 / (t1 - t0), raw * 1e3 / (t1 - t0),
+				rec.bytes(), 100.0 * rec.bytes() / raw, rec.bytes() * 30.0 / n / 1024));
+
+		// decode (and check)
+		DepthReplay rep = new DepthReplay(f, false);
+		t0 = System.nanoTime();
+		while (rep.next() != null)
+			;
+		t1 = System.nanoTime();
+		rep.close();
+		int bad = 0;
+		DepthReplay check = new DepthReplay(f, false);
+		for( int i = 0; i < n; i++ )
+			if (check.next() == null || !Arrays.equals(check.frame(), scenes[i]))
+				bad++;
+		check.close();
+		System.out.println(String.format(
+				"decode: %d frames in %.0fms: %.0f fps, %.0f MB/s raw, %d mismatches",
+				rep.frames(), (t1 - t0) / 1000000.0, rep.frames() * 1e9 / (t1 - t0),
+				raw * 1e3 / (t1 - t0), bad));
+		if (args.length < 2)
+			f.delete();
+	}
+}
@@ -0,0 +1,195 @@
+package ActiveSpace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A DepthReplay plays back a DepthRecorder recording, one frame at a
+ * time, either with its recorded timing or as fast as it can be decoded.
+ *
+ *   The file is read through a memory mapped window (moved along as
+ *   needed), and each frame is decoded in place over the previous one,
+ *   so playback allocates nothing.  Since the recording includes the
+ *   sensor's projective to real-world factors, positions in a replayed
+ *   frame can be converted to real-world coordinates without a Kinect.
+ *
+ * @author cwkampe
+ */
+public class DepthReplay {
+
+	private static final long WINDOW = 64L * 1024 * 1024;	// mapped window size
+
+	private RandomAccessFile file;	// the recording
+	private FileChannel channel;	// its channel
+	private MappedByteBuffer map;	// current mapped window
+	private long base;				// file offset of the window
+	private long size;				// file size
+	private int width, height;		// frame size
+	private float xz, yz;			// projective to real-world factors
+	private short frame[];			// current frame
+	private byte encoded[];			// encoded frame
+	private boolean realtime;		// replay with recorded timing
+	private long start;				// when we started replaying
+	private long time;				// current frame time (since first frame)
+	private long frames;			// frames replayed
+
+	/**
+	 * open a recording
+	 *
+	 * @param f			file to be replayed
+	 * @param realtime	pace frames as recorded (vs as fast as possible)
+	 */
+	public DepthReplay( File f, boolean realtime ) throws IOException {
+		this.realtime = realtime;
+		file = new RandomAccessFile(f, "r");
+		channel = file.getChannel();
+		size = channel.size();
+		base = 0;
+		map = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(WINDOW, size));
+		if (size < DepthRecorder.HEADER || map.getInt() != DepthRecorder.MAGIC) {
+			close();
+			throw new IOException(f.getName() + ": not a depth recording");
+		}
+		if (map.getInt() != DepthRecorder.VERSION) {
+			close();
+			throw new IOException(f.getName() + ": unsupported depth recording version");
+		}
+		width = map.getInt();
+		height = map.getInt();
+		xz = map.getFloat();
+		yz = map.getFloat();
+		frame = new short[width * height];
+		encoded = new byte[DepthRecorder.maxEncoded(width * height)];
+		frames = 0;
+	}
+
+	public int width() {
+		return width;
+	}
+
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * @return the current frame (updated in place by next)
+	 */
+	public short[] frame() {
+		return frame;
+	}
+
+	/**
+	 * @return time of the current frame (ns since the first)
+	 */
+	public long time() {
+		return time;
+	}
+
+	/**
+	 * @return number of frames replayed
+	 */
+	public long frames() {
+		return frames;
+	}
+
+	/**
+	 * advance to the next frame
+	 *
+	 * @return	the (updated) frame, or null at the end of the recording
+	 */
+	public short[] next() {
+		if (map == null)
+			return null;
+		try {
+			// move the window along if the next frame isn't all in it
+			if (map.remaining() < DepthRecorder.FRAME_HEADER || !whole()) {
+				base += map.position();
+				if (base + DepthRecorder.FRAME_HEADER > size)
+					return null;
+				map = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(WINDOW, size - base));
+				if (map.remaining() < DepthRecorder.FRAME_HEADER || !whole())
+					return null;		// truncated
+			}
+		} catch (IOException e) {
+			System.out.println("Error reading depth recording");
+			e.printStackTrace();
+			return null;
+		}
+
+		long t = map.getLong();
+		int len = map.getInt();
+		if (len == 0)
+			return null;		// end of an untruncated recording
+		map.get(encoded, 0, len);
+		DepthRecorder.decode(encoded, len, frame);
+		time = t;
+
+		// wait until it is time for this frame
+		long now = System.nanoTime();
+		if (frames == 0)
+			start = now - t;
+		else if (realtime && start + t > now) {
+			long wait = start + t - now;
+			try {
+				Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		frames++;
+		return frame;
+	}
+
+	/**
+	 * @return whether or not the whole of the next frame is in the window
+	 */
+	private boolean whole() {
+		int len = map.getInt(map.position() + 8);
+		return len >= 0 && map.remaining() >= DepthRecorder.FRAME_HEADER + len;
+	}
+
+	/**
+	 * convert a (projective) point in a frame to real-world coordinates
+	 * 		(the same way OpenNI does)
+	 *
+	 * @param x, y	pixel
+	 * @param z		depth (mm)
+	 * @return		real-world coordinates (mm)
+	 */
+	public Coord realWorld( int x, int y, int z ) {
+		return new Coord(((float) x / width - 0.5F) * z * xz,
+				(0.5F - (float) y / height) * z * yz, z);
+	}
+
+	/**
+	 * convert a batch of real-world positions to projective (pixel)
+	 * coordinates (the inverse of realWorld)
+	 *
+	 * @param xyz	x,y,z for each position (converted in place)
+	 * @param n		number of positions
+	 */
+	public void projective( float xyz[], int n ) {
+		for( int i = 0; i < n; i++ ) {
+			float z = xyz[3 * i + 2];
+			xyz[3 * i] = (xyz[3 * i] / (z * xz) + 0.5F) * width;
+			xyz[3 * i + 1] = (0.5F - xyz[3 * i + 1] / (z * yz)) * height;
+		}
+	}
+
+	/**
+	 * finish with the recording
+	 */
+	public void close() {
+		map = null;
+		try {
+			if (file != null)
+				file.close();
+		} catch (IOException e) {
+			// we're done with it anyway
+		}
+		file = null;
+	}
+}
@@ -4,23 +4,78 @@ package ActiveSpace;
  * This is the media playing interface exposed to Active Spaces
  */
 public interface MediaActions {
+	
+	//* the ways in which one image can replace another
+	public enum Transition {
+		CUT, CROSSFADE, FADE
+	};
+	
 	/**
 	 * display the image from the specified file
 	 * @param filename
 	 */
 	public void displayImage( String filename );
 	
+	/**
+	 * display the image from the specified file, with a transition
+	 * 		CUT			replace the current image immediately
+	 * 		CROSSFADE	blend from the current image to the new one
+	 * 		FADE		fade the current image to black, and then
+	 * 					fade the new image in from black
+	 * 
+	 * @param filename
+	 * @param t			type of transition
+	 * @param msecs		duration of the transition
+	 */
+	public void displayImage( String filename, Transition t, int msecs );
+	
 	/**
 	 * blank the displaned image
 	 */
 	public void blankImage();
 	
+	/**
+	 * blank the displayed image, with a transition
+	 * 		(CROSSFADE and FADE both fade to black)
+	 * 
+	 * @param t			type of transition
+	 * @param msecs		duration of the transition
+	 */
+	public void blankImage( Transition t, int msecs );
+	
+	/**
+	 * animate a sequence of images (in file name order)
+	 * 
+	 * @param dirname	directory containing the numbered image files
+	 * @param fps		frames per second
+	 * @param loop		repeat until stopped
+	 */
+	public void playSequence( String dirname, int fps, boolean loop );
+	
+	/**
+	 * stop the animated image sequence (leaving its last frame up)
+	 */
+	public void stopSequence();
+	
 	/**
 	 * play the sound from the specified file
 	 * @param filename
 	 */
 	public void playSound( String filename );
 	
+	/**
+	 * play the sound from the specified file, positioned in the room
+	 * @param filename
+	 * @param where		position of the sound (null means centered)
+	 */
+	public void playSound( String filename, Coord where );
+	
+	/**
+	 * play the sound from the specified file, repeating until silenced
+	 * @param filename
+	 */
+	public void loopSound( String filename );
+	
 	/**
 	 * silence the sound player
 	 */
@@ -37,4 +92,12 @@ public interface MediaActions {
 	 * clear the displayed text
 	 */
 	public void clearText();
+	
+	/**
+	 * find the media player for a named output channel
+	 * 
+	 * @param name	name of the channel (null means the default)
+	 * @return		MediaActions for that channel
+	 */
+	public MediaActions channel( String name );
 }
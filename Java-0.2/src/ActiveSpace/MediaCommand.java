@@ -0,0 +1,136 @@
+package ActiveSpace;
+
+/**
+ * a MediaCommand is one (compiled) action of a RegionEvent
+ *
+ * All of the decisions that can be made when the rules are read
+ * (e.g. is this a "cancel", does the sound loop, which channel is
+ * it for) are made when the command is created, so executing one
+ * is just a switch and a MediaActions call.  The channel is looked
+ * up once, the first time the command is carried out (by which time
+ * the channels have been set up), rather than on every trigger.  Apart
+ * from that, commands are immutable, and their file and channel names
+ * are shared (see Space.path).
+ *
+ * @author cwkampe
+ */
+public class MediaCommand {
+
+	//* the things a command can do
+	public enum Op {
+		SHOW, BLANK, ANIMATE, STILL, PLAY, LOOP, SILENCE, TEXT, CLEAR
+	};
+
+	private final Op op;			// what to do
+	private final String file;		// media file (or directory) it is done with
+	private final String channel;	// output channel (null = default)
+	private final MediaActions.Transition transition;	// how to change images
+	private final int param;		// transition time (ms) or frame rate
+	private final boolean loop;		// repeat the sequence
+	private volatile Binding bound;	// channel found for a MediaActions
+
+	/**
+	 * the channel a command was found to use, for a particular media player
+	 */
+	private static class Binding {
+		final MediaActions media;	// the player we were given
+		final MediaActions target;	// its channel that we use
+
+		Binding( MediaActions media, MediaActions target ) {
+			this.media = media;
+			this.target = target;
+		}
+	}
+
+	/**
+	 * create a new command
+	 *
+	 * @param op		what to do
+	 * @param file		(resolved) media file name (if any)
+	 * @param channel	output channel (null = default)
+	 * @param t			image transition (SHOW, BLANK)
+	 * @param param		transition time (SHOW, BLANK) or frame rate (ANIMATE)
+	 * @param loop		repeat (ANIMATE)
+	 */
+	public MediaCommand( Op op, String file, String channel,
+			MediaActions.Transition t, int param, boolean loop ) {
+		this.op = op;
+		this.file = file;
+		this.channel = channel;
+		this.transition = t;
+		this.param = param;
+		this.loop = loop;
+	}
+
+	public Op getOp() {
+		return op;
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public String getChannel() {
+		return channel;
+	}
+
+	/**
+	 * carry out this command
+	 *
+	 * @param r	Region in which the event happened (or null)
+	 * @param a	Actor that triggered it (or null)
+	 * @param m	MediaActions object (to play/display)
+	 */
+	public void execute( Region r, Actor a, MediaActions m ) {
+		if (channel != null) {
+			Binding b = bound;
+			if (b == null || b.media != m) {
+				b = new Binding(m, m.channel(channel));
+				bound = b;
+			}
+			m = b.target;
+		}
+
+		switch (op) {
+		case SHOW:
+			m.displayImage(file, transition, param);
+			break;
+		case BLANK:
+			m.blankImage(transition, param);
+			break;
+		case ANIMATE:
+			m.playSequence(file, param, loop);
+			break;
+		case STILL:
+			m.stopSequence();
+			break;
+		case PLAY:
+			// position the sound where the actor (or region) is
+			if (a != null && a.lastPosition() != null)
+				m.playSound(file, a.lastPosition());
+			else if (r != null)
+				m.playSound(file, r.getCenter());
+			else
+				m.playSound(file);
+			break;
+		case LOOP:
+			m.loopSound(file);
+			break;
+		case SILENCE:
+			m.silence();
+			break;
+		case TEXT:
+			// TODO - may want to support color/font/size/style parms
+			m.displayText(file);
+			break;
+		case CLEAR:
+			m.clearText();
+			break;
+		}
+	}
+
+	public String toString() {
+		return op + (file == null ? "" : " " + file) +
+				(channel == null ? "" : " (" + channel + ")");
+	}
+}
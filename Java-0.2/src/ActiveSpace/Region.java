@@ -105,6 +105,13 @@ public class Region {
 		return this.radius;
 	}
 	
+	/**
+	 * @return the rules associated with this region
+	 */
+	public List<Rule> getRules() {
+		return this.rules;
+	}
+	
 	/**
 	 * put this region into a specified state
 	 * @param newsate
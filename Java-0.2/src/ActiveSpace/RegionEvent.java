@@ -12,9 +12,22 @@ package ActiveSpace;
  */
 public class RegionEvent {
 	
+	//* the kinds of actions that can be directed to an output channel
+	public enum Action {
+		IMAGE, SEQUENCE, SOUND, TEXT
+	};
+	
 	private String imageFile;	// name of file containing image to display
+	private MediaActions.Transition transition;	// how to change images
+	private int transitionTime;	// how long that change should take (ms)
+	private String sequenceDir;	// directory of numbered frames to animate
+	private int sequenceRate;	// frames per second for that animation
+	private boolean sequenceLoop;	// repeat that animation until cancelled
 	private String textFile;	// name of file containing text to display
 	private String soundFile;	// name of file containing sound to play
+	private boolean soundLoop;	// repeat that sound until silenced
+	private String channels[];	// output channel for each action (null = default)
+	private MediaCommand commands[];	// compiled actions (null = not yet compiled)
 	
 	/**
 	 * Constructor for new callback
@@ -26,8 +39,16 @@ public class RegionEvent {
 	 */
 	public RegionEvent() {
 		imageFile = null;
+		transition = MediaActions.Transition.CUT;
+		transitionTime = 0;
+		sequenceDir = null;
+		sequenceRate = 0;
+		sequenceLoop = false;
 		soundFile = null;
+		soundLoop = false;
 		textFile = null;
+		channels = new String[Action.values().length];
+		commands = null;
 	}
 	
 	/**
@@ -38,6 +59,56 @@ public class RegionEvent {
 	 */
 	public void setImage( String filename ) {
 		imageFile = filename;
+		commands = null;
+	}
+	
+	/**
+	 * specify how the image is to be changed
+	 * 
+	 * @param t		type of transition
+	 * @param msecs	duration of the transition
+	 */
+	public void setTransition( MediaActions.Transition t, int msecs ) {
+		transition = t;
+		transitionTime = msecs;
+		commands = null;
+	}
+	
+	/**
+	 * associate an image sequence (flipbook) action with a rule
+	 * 
+	 * @param dirname	directory of numbered image files
+	 * 					"cancel" means stop the sequence
+	 * @param fps		frames per second
+	 * @param loop		repeat until cancelled
+	 */
+	public void setSequence( String dirname, int fps, boolean loop ) {
+		sequenceDir = dirname;
+		sequenceRate = fps;
+		sequenceLoop = loop;
+		commands = null;
+	}
+	
+	/**
+	 * direct one of our actions to a named output channel
+	 * 
+	 * @param a		type of action
+	 * @param name	name of output channel (null means the default)
+	 */
+	public void setChannel( Action a, String name ) {
+		channels[a.ordinal()] = name;
+		commands = null;
+	}
+	
+	//* convert string representations into Transition enum values
+	public static MediaActions.Transition transition( String s ) {
+		if (s.equalsIgnoreCase("CROSSFADE"))
+			return MediaActions.Transition.CROSSFADE;
+		if (s.equalsIgnoreCase("FADE"))
+			return MediaActions.Transition.FADE;
+		if (!s.equalsIgnoreCase("CUT"))
+			System.out.println("Unknown image transition: " + s + " ... using CUT");
+		return MediaActions.Transition.CUT;
 	}
 	
 	/**
@@ -48,6 +119,17 @@ public class RegionEvent {
 	 */
 	public void setSound( String filename ) {
 		soundFile = filename;
+		commands = null;
+	}
+	
+	/**
+	 * should the sound be repeated until silenced
+	 * 
+	 * @param loop	true for ambient (looping) sounds
+	 */
+	public void setLoop( boolean loop ) {
+		soundLoop = loop;
+		commands = null;
 	}
 	
 	/**
@@ -58,6 +140,43 @@ public class RegionEvent {
 	 */
 	public void setText( String filename ) {
 		textFile = filename;
+		commands = null;
+	}
+	
+	/**
+	 * @return name of image file (or "cancel" or null)
+	 */
+	public String getImage() {
+		return imageFile;
+	}
+	
+	/**
+	 * @return name of sequence directory (or "cancel" or null)
+	 */
+	public String getSequence() {
+		return sequenceDir;
+	}
+	
+	/**
+	 * @return name of sound file (or "cancel" or null)
+	 */
+	public String getSound() {
+		return soundFile;
+	}
+	
+	/**
+	 * @return name of text file (or "cancel" or null)
+	 */
+	public String getText() {
+		return textFile;
+	}
+	
+	/**
+	 * @return (XML) channel attribute for one of our actions
+	 */
+	private String channelAttr( Action a ) {
+		String name = channels[a.ordinal()];
+		return (name == null) ? "" : " channel=\"" + name + "\"";
 	}
 	
 	/**
@@ -66,9 +185,13 @@ public class RegionEvent {
 	public String toString() {
 		String out = "";
 		if (imageFile != null)
-			out += "image=" + imageFile + " ";
+			out += "image=" + imageFile + 
+				(transition == MediaActions.Transition.CUT ? " " : "(" + transition + ") ");
+		if (sequenceDir != null)
+			out += "sequence=" + sequenceDir + "(" + sequenceRate + "fps" +
+				(sequenceLoop ? ",loop) " : ") ");
 		if (soundFile != null)
-			out += "sound=" + soundFile + " ";
+			out += "sound=" + soundFile + (soundLoop ? "(loop) " : " ");
 		if (textFile != null)
 			out += "text=" + textFile;
 		
@@ -81,11 +204,19 @@ public class RegionEvent {
 	public String toXML() {
 		String out = "";
 		if (imageFile != null)
-			out += "        <image file=\"" + imageFile + "\" />\n";
+			out += "        <image file=\"" + imageFile + "\"" + channelAttr(Action.IMAGE) +
+					(transition == MediaActions.Transition.CUT ? "" : 
+						" transition=\"" + transition + "\" duration=\"" + transitionTime + "\"") +
+					" />\n";
+		if (sequenceDir != null)
+			out += "        <sequence file=\"" + sequenceDir + "\" rate=\"" + sequenceRate + "\"" +
+					channelAttr(Action.SEQUENCE) +
+					(sequenceLoop ? " loop=\"true\"" : "") + " />\n";
 		if (soundFile != null)
-			out += "        <sound file=\"" + soundFile + "\" />\n";
+			out += "        <sound file=\"" + soundFile + "\"" + channelAttr(Action.SOUND) +
+					(soundLoop ? " loop=\"true\"" : "") + " />\n";
 		if (textFile != null)
-			out += "        <text file=\"" + textFile + "\" />\n";
+			out += "        <text file=\"" + textFile + "\"" + channelAttr(Action.TEXT) + " />\n";
 		return out;
 	}
 	
@@ -106,27 +237,58 @@ public class RegionEvent {
 	 * 		to take actions based on the state of the region/actor.
 	 */
 	public void callback( Region r, Actor a, Rule.EventType t, MediaActions m) {
+		if (commands == null)
+			compile();
+		for( int i = 0; i < commands.length; i++ )
+			commands[i].execute(r, a, m);
+	}
+	
+	/**
+	 * compile our actions into (immutable) MediaCommands, so that
+	 * no decisions have to be made when the event is triggered
+	 * 
+	 * @return	the compiled commands
+	 */
+	public MediaCommand[] compile() {
+		MediaCommand c[] = new MediaCommand[Action.values().length];
+		int n = 0;
 		
 		if (imageFile != null) {
 			if (imageFile.equals("cancel"))
-				m.blankImage();
+				c[n++] = new MediaCommand(MediaCommand.Op.BLANK, null,
+						channels[Action.IMAGE.ordinal()], transition, transitionTime, false);
 			else
-				m.displayImage(imageFile);
+				c[n++] = new MediaCommand(MediaCommand.Op.SHOW, imageFile,
+						channels[Action.IMAGE.ordinal()], transition, transitionTime, false);
 		}
 		
-		if (soundFile != null) {
-			if (soundFile.equals("cancel"))
-				m.silence();
+		if (sequenceDir != null) {
+			if (sequenceDir.equals("cancel"))
+				c[n++] = new MediaCommand(MediaCommand.Op.STILL, null,
+						channels[Action.SEQUENCE.ordinal()], null, 0, false);
 			else
-				m.playSound(soundFile);
+				c[n++] = new MediaCommand(MediaCommand.Op.ANIMATE, sequenceDir,
+						channels[Action.SEQUENCE.ordinal()], null, sequenceRate, sequenceLoop);
+		}
+		
+		if (soundFile != null) {
+			MediaCommand.Op op = soundFile.equals("cancel") ? MediaCommand.Op.SILENCE :
+				soundLoop ? MediaCommand.Op.LOOP : MediaCommand.Op.PLAY;
+			c[n++] = new MediaCommand(op, (op == MediaCommand.Op.SILENCE) ? null : soundFile,
+					channels[Action.SOUND.ordinal()], null, 0, false);
 		}
 		
 		if (textFile != null) {
 			if (textFile.equals("cancel"))
-				m.clearText();
+				c[n++] = new MediaCommand(MediaCommand.Op.CLEAR, null,
+						channels[Action.TEXT.ordinal()], null, 0, false);
 			else
-				// TODO - may want to support color/font/size/style parms
-				m.displayText(textFile);
+				c[n++] = new MediaCommand(MediaCommand.Op.TEXT, textFile,
+						channels[Action.TEXT.ordinal()], null, 0, false);
 		}
+		
+		commands = new MediaCommand[n];
+		System.arraycopy(c, 0, commands, 0, n);
+		return commands;
 	}
 }
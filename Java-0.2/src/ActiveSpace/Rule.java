@@ -30,6 +30,16 @@ public class Rule {
 	private int nextState;
 	private RegionEvent action;
 	
+	private static int debugLevel = 1;	// level of diagnostics
+	
+	/**
+	 * set the level of diagnostics for all rules
+	 * 		(triggered rules are reported at level 1 and above)
+	 */
+	public static void debug( int level ) {
+		debugLevel = level;
+	}
+	
 	/**
 	 * Create a new rule
 	 * 
@@ -89,6 +99,13 @@ public class Rule {
 		return out;
 	}
 	
+	/**
+	 * @return the actions associated with this rule
+	 */
+	public RegionEvent getAction() {
+		return action;
+	}
+	
 	/**
 	 * check whether or not this rule has been triggered, and if
 	 * so perform the appropriate actions
@@ -106,7 +123,8 @@ public class Rule {
 			return false;
 		
 		// call the event callback handler
-		System.out.println("Actor " + actor + " triggered rule '" + name + "'");
+		if (debugLevel > 0)
+			System.out.println("Actor " + actor + " triggered rule '" + name + "'");
 		action.callback(region, actor, event, m);
 		if (nextState >= 0)
 			region.setState(nextState);
@@ -4,9 +4,11 @@ import java.io.IOException;
 import java.io.InvalidObjectException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -27,7 +29,12 @@ public class Space {
 	private String name;			// name of this space
 	private DocumentBuilder db;		// parser instance
 	private List<Region> regions;	// list of registered regions
+	private volatile int changes;	// number of changes to the region list
+	private float bounds[];			// area covered by the regions (see bounds)
+	private int boundsAt;			// changes when bounds was computed
 	private String fileBase;		// prefix for fetched files
+	private Map<String, String> paths;	// resolved media file names
+	private Map<String, String> names;	// other shared names (e.g. channels)
 	private int debugLevel;			// level of desired debug output
 	private MediaActions media;		// object for multi-media actions
 	private Boolean started;		// has the startup rule been invoked?
@@ -41,6 +48,9 @@ public class Space {
 	private Actor lastActor;	// last actor we were testing
 	private int lastRegion;		// number of regions completed for this actor
 	private final float step = 10.0F;	// test-walk step size (in mm)
+	
+	private static final int DEFAULT_TRANSITION = 1000;	// image transition time (ms)
+	private static final int DEFAULT_SEQUENCE_RATE = 15;	// image sequence frame rate
 
 
 	public Space() {
@@ -48,6 +58,8 @@ public class Space {
 		debugLevel = 1;			// basic debug info
 		name = null;			// we do not yet have a name
 		fileBase = null;		// we do not yet have a prefix
+		paths = new HashMap<String, String>();
+		names = new HashMap<String, String>();
 		media = null;			// we do not yet have a media player
 		db = null;				// we have not yet created a parser
 		entryPos = null;		// we don't have any regions yet
@@ -62,6 +74,7 @@ public class Space {
 
 	public void debug(int level) {		// control the level of diagnostics
 		debugLevel = level;
+		Rule.debug(level);
 	}
 	
 	/**
@@ -85,6 +98,37 @@ public class Space {
 	 */
 	public void prefix( String prefix ) {
 		this.fileBase = prefix;
+		paths.clear();
+	}
+	
+	/**
+	 * resolve a media file name (relative to our prefix)
+	 * 		every rule that names the same file shares one String
+	 * 
+	 * @param name	file name (or "cancel") from the rules file
+	 * @return		(shared) resolved path name
+	 */
+	private String path( String name ) {
+		if (name.equals("cancel"))
+			return "cancel";
+		String p = paths.get(name);
+		if (p == null) {
+			p = (fileBase == null) ? name : fileBase + "/" + name;
+			paths.put(name, p);
+		}
+		return p;
+	}
+	
+	/**
+	 * @return a shared copy of a (frequently repeated) name
+	 */
+	private String shared( String name ) {
+		String n = names.get(name);
+		if (n == null) {
+			names.put(name, name);
+			n = name;
+		}
+		return n;
 	}
 	
 	/**
@@ -102,7 +146,27 @@ public class Space {
 	 * @param r	region to be added
 	 */
 	public void addRegion(Region r) {
-		regions.add(r);
+		synchronized(regions) {		// (vs regions(), perhaps on another thread)
+			regions.add(r);
+			changes++;
+		}
+	}
+
+	/**
+	 * return the number of times the list of regions has changed
+	 * 		(so that anything derived from it can tell when to rebuild)
+	 */
+	public int changes() {
+		return changes;
+	}
+
+	/**
+	 * return (a copy of) the list of regions
+	 */
+	public Region[] regions() {
+		synchronized(regions) {
+			return regions.toArray(new Region[regions.size()]);
+		}
 	}
 
 	/**
@@ -150,6 +214,87 @@ public class Space {
 		throw new ArrayIndexOutOfBoundsException("unknown region:" + name);
 	}
 
+	/**
+	 * @return left-most x coordinate covered by any region
+	 */
+	public float minX() {
+		return bounds()[0];
+	}
+
+	/**
+	 * @return right-most x coordinate covered by any region
+	 */
+	public float maxX() {
+		return bounds()[1];
+	}
+
+	/**
+	 * @return nearest z coordinate covered by any region
+	 */
+	public float minZ() {
+		return bounds()[2];
+	}
+
+	/**
+	 * @return farthest z coordinate covered by any region
+	 */
+	public float maxZ() {
+		return bounds()[3];
+	}
+
+	/**
+	 * find the extent of the area covered by the regions
+	 * 		(recomputed only when the list of regions changes)
+	 * 
+	 * @return left, right, near and far edges (all 0 if there are no regions)
+	 */
+	private synchronized float[] bounds() {
+		int c = changes;
+		if (bounds != null && boundsAt == c)
+			return bounds;
+
+		float b[] = new float[4];
+		Region r[] = regions();
+		for( int i = 0; i < r.length; i++ ) {
+			Coord center = r[i].getCenter();
+			float radius = r[i].getRadius();
+			if (i == 0 || center.x - radius < b[0])
+				b[0] = center.x - radius;
+			if (i == 0 || center.x + radius > b[1])
+				b[1] = center.x + radius;
+			if (i == 0 || center.z - radius < b[2])
+				b[2] = center.z - radius;
+			if (i == 0 || center.z + radius > b[3])
+				b[3] = center.z + radius;
+		}
+		bounds = b;
+		boundsAt = c;
+		return b;
+	}
+
+	/**
+	 * return the actions of every rule defined in this space
+	 * 
+	 * @return list of RegionEvents
+	 */
+	public List<RegionEvent> events() {
+		List<RegionEvent> l = new LinkedList<RegionEvent>();
+		if (onStartup != null)
+			l.add(onStartup.getAction());
+		if (actorEntry != null)
+			l.add(actorEntry.getAction());
+		if (actorExit != null)
+			l.add(actorExit.getAction());
+		Iterator<Region> it = regions.iterator();
+		while(it.hasNext()) {
+			Region r = it.next();
+			Iterator<Rule> rit = r.getRules().iterator();
+			while(rit.hasNext())
+				l.add(rit.next().getAction());
+		}
+		return l;
+	}
+
 	/**
 	 * add a new actor to the space
 	 * 
@@ -359,36 +504,61 @@ public class Space {
 					p = p.getNextSibling() ) {
 				if (p.getNodeName().equals("image")) {
 					x = p.getAttributes().getNamedItem("file");
-					if (x != null) {
-						value = x.getNodeValue();
-						if (fileBase != null && !value.equals("cancel"))
-							value = fileBase + "/" + value;
-					} else
-						value = null;
+					value = (x == null) ? null : path(x.getNodeValue());
 					r.setImage( value );
+					x = p.getAttributes().getNamedItem("transition");
+					if (x != null) {
+						MediaActions.Transition t = RegionEvent.transition(x.getNodeValue());
+						x = p.getAttributes().getNamedItem("duration");
+						int msecs = DEFAULT_TRANSITION;
+						if (x != null) {
+							try {
+								msecs = Integer.parseInt(x.getNodeValue().trim());
+							} catch (NumberFormatException e) {
+								System.out.println("Bad transition duration: " + x.getNodeValue() +
+										" ... using " + DEFAULT_TRANSITION + "ms");
+							}
+						}
+						r.setTransition(t, msecs);
+					}
+					x = p.getAttributes().getNamedItem("channel");
+					if (x != null)
+						r.setChannel(RegionEvent.Action.IMAGE, shared(x.getNodeValue()));
+				}
+				if (p.getNodeName().equals("sequence")) {
+					x = p.getAttributes().getNamedItem("file");
+					value = (x == null) ? null : path(x.getNodeValue());
+					x = p.getAttributes().getNamedItem("rate");
+					int fps = (x == null) ? DEFAULT_SEQUENCE_RATE : Integer.parseInt(x.getNodeValue());
+					x = p.getAttributes().getNamedItem("loop");
+					boolean loop = (x != null) && Boolean.parseBoolean(x.getNodeValue());
+					r.setSequence( value, fps, loop );
+					x = p.getAttributes().getNamedItem("channel");
+					if (x != null)
+						r.setChannel(RegionEvent.Action.SEQUENCE, shared(x.getNodeValue()));
 				}
 				if (p.getNodeName().equals("sound")) {
 					x = p.getAttributes().getNamedItem("file");
-					if (x != null) {
-						value = x.getNodeValue();
-						if (fileBase != null && !value.equals("cancel"))
-							value = fileBase + "/" + value;
-					} else
-						value = null;
+					value = (x == null) ? null : path(x.getNodeValue());
 					r.setSound( value );
+					x = p.getAttributes().getNamedItem("loop");
+					if (x != null)
+						r.setLoop(Boolean.parseBoolean(x.getNodeValue()));
+					x = p.getAttributes().getNamedItem("channel");
+					if (x != null)
+						r.setChannel(RegionEvent.Action.SOUND, shared(x.getNodeValue()));
 				}
 				if (p.getNodeName().equals("text")) {
 					// TODO - add support for size/color/font/style parms
 					x = p.getAttributes().getNamedItem("file");
-					if (x != null) {
-						value = x.getNodeValue();
-						if (fileBase != null && !value.equals("cancel"))
-							value = fileBase + "/" + value;
-					} else
-						value = null;
+					value = (x == null) ? null : path(x.getNodeValue());
 					r.setText( value );
+					x = p.getAttributes().getNamedItem("channel");
+					if (x != null)
+						r.setChannel(RegionEvent.Action.TEXT, shared(x.getNodeValue()));
 				}
 			}
+			r.compile();
 
 			// gather the rule attributes and create the rule
 			String ruleName = n.getAttributes().getNamedItem("name").getNodeValue();
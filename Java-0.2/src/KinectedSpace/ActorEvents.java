@@ -0,0 +1,81 @@
+package KinectedSpace;
+
+/**
+ * ActorEvents is a queue of actor arrivals and departures, from the
+ * sensor (e.g. OpenNI's new/lost user callbacks) to the tracking loop
+ *
+ *   It is a single-producer, single-consumer ring of ints: an actor
+ *   number for an arrival, its negation for a departure.  The producer
+ *   only writes the tail and the consumer only writes the head, each
+ *   published through a volatile, so neither side ever locks.  Events
+ *   are delivered in the order they happened, so an actor that leaves
+ *   and is then replaced is dropped before its successor is added.
+ */
+public class ActorEvents {
+
+	private static final int SIZE = 256;	// ring size (power of two)
+
+	private final int ring[];		// the events
+	private volatile long head;		// next event to be consumed
+	private volatile long tail;		// next slot to be filled
+	private long overflows;			// events lost for lack of room
+
+	public ActorEvents() {
+		ring = new int[SIZE];
+		head = 0;
+		tail = 0;
+		overflows = 0;
+	}
+
+	/**
+	 * (producer) note the arrival of an actor
+	 *
+	 * @param actor	actor number (> 0)
+	 */
+	public boolean add( int actor ) {
+		return put(actor);
+	}
+
+	/**
+	 * (producer) note the departure of an actor
+	 *
+	 * @param actor	actor number (> 0)
+	 */
+	public boolean drop( int actor ) {
+		return put(-actor);
+	}
+
+	private boolean put( int event ) {
+		long t = tail;
+		if (t - head >= SIZE) {
+			overflows++;
+			System.out.println("Actor event queue full: lost " +
+					((event > 0) ? "arrival" : "departure") + " of actor " + Math.abs(event));
+			return false;
+		}
+		ring[(int) (t & (SIZE - 1))] = event;
+		tail = t + 1;		// publishes the event
+		return true;
+	}
+
+	/**
+	 * (consumer) take the next event
+	 *
+	 * @return	actor number (arrival), -actor number (departure), or 0 if none
+	 */
+	public int poll() {
+		long h = head;
+		if (h == tail)
+			return 0;
+		int event = ring[(int) (h & (SIZE - 1))];
+		head = h + 1;		// frees the slot
+		return event;
+	}
+
+	/**
+	 * @return events lost because the consumer fell too far behind
+	 */
+	public long overflows() {
+		return overflows;
+	}
+}
@@ -0,0 +1,261 @@
+package KinectedSpace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import ActiveSpace.Coord;
+
+/**
+ * An ActorLog is a record of everything the sensor told a space:
+ * which actors arrived, where they moved, and when they left.
+ *
+ *   A show can be logged (KinectedSpaceApp --log) and then played back
+ *   through the same (or a changed) set of rules, either at the pace
+ *   it happened or as fast as the rules can be run.  The positions are
+ *   replayed exactly, so the same rules produce the same actions, which
+ *   makes a log of real visitor traffic a regression test (Benchmark
+ *   --log, with --trace) as well as a benchmark.  A log can also be
+ *   replayed as a sensor (see ReplaySource), through a Reader.
+ *
+ *   log file format (big-endian, append-only):
+ *		header:	magic, version
+ *		records: type (byte), us since the previous record (long), actor,
+ *				and (for moves) x, y, z
+ *	(version 1 logs, with an int gap that overflowed after 35 minutes
+ *	 of quiet, can still be replayed)
+ */
+public class ActorLog {
+
+	public static final int MAGIC = 0x4b53414c;	// "KSAL"
+	public static final int VERSION = 2;
+
+	public static final byte ADD = 1;		// actor arrived
+	public static final byte DROP = 2;		// actor left
+	public static final byte MOVE = 3;		// actor moved
+
+	/**
+	 * whatever is to be driven by a replayed log
+	 */
+	public interface Player {
+		void addActor( int actor );
+		void dropActor( int actor );
+		void update( int actor, Coord pos );
+	}
+
+	private DataOutputStream out;	// the log
+	private long last;				// time of the previous record, as logged (ns)
+	private long records;			// records written
+
+	/**
+	 * start a new log
+	 *
+	 * @param f	file to be written
+	 */
+	public ActorLog( File f ) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		last = System.nanoTime();
+		records = 0;
+	}
+
+	/**
+	 * note the arrival of an actor
+	 */
+	public void added( int actor ) {
+		record(ADD, actor, null);
+	}
+
+	/**
+	 * note the departure of an actor
+	 */
+	public void dropped( int actor ) {
+		record(DROP, actor, null);
+	}
+
+	/**
+	 * note an actor's new position
+	 */
+	public void moved( int actor, Coord pos ) {
+		record(MOVE, actor, pos);
+	}
+
+	private void record( byte type, int actor, Coord pos ) {
+		if (out == null)
+			return;
+		long gap = (System.nanoTime() - last) / 1000;	// (us)
+		try {
+			out.writeByte(type);
+			out.writeLong(gap);
+			out.writeInt(actor);
+			if (pos != null) {
+				out.writeFloat(pos.x);
+				out.writeFloat(pos.y);
+				out.writeFloat(pos.z);
+			}
+		} catch (IOException e) {
+			System.out.println("Error writing actor log ... logging stopped");
+			e.printStackTrace();
+			close();
+			return;
+		}
+		last += gap * 1000;		// (keeping the remainder, so we do not drift)
+		records++;
+	}
+
+	/**
+	 * @return number of records written
+	 */
+	public long records() {
+		return records;
+	}
+
+	/**
+	 * finish the log
+	 */
+	public void close() {
+		if (out == null)
+			return;
+		try {
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		out = null;
+	}
+
+	/**
+	 * reads a log back, one record at a time
+	 */
+	public static class Reader {
+		private DataInputStream in;	// the log
+		private String name;		// its name (for messages)
+		private int version;		// its format
+
+		// the current record
+		public byte type;			// ADD, DROP or MOVE
+		public long when;			// ns since the start of the log
+		public int actor;			// actor it is about
+		public float x, y, z;		// (for moves) new position
+
+		/**
+		 * open a log
+		 *
+		 * @param f		log to be read
+		 */
+		public Reader( File f ) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 64 * 1024));
+			name = f.getName();
+			try {
+				if (in.readInt() != MAGIC)
+					throw new IOException(name + ": not an actor log");
+				version = in.readInt();
+				if (version < 1 || version > VERSION)
+					throw new IOException(name + ": unsupported actor log version " + version);
+			} catch (IOException e) {
+				in.close();
+				throw (e instanceof EOFException) ? new IOException(name + ": not an actor log") : e;
+			}
+			when = 0;
+		}
+
+		/**
+		 * read the next record
+		 *
+		 * @return	whether or not there was one (false at the end of the log)
+		 */
+		public boolean next() throws IOException {
+			if (in == null)
+				return false;
+			try {
+				type = in.readByte();
+			} catch (EOFException e) {
+				close();
+				return false;
+			}
+			try {
+				when += ((version == 1) ? in.readInt() : in.readLong()) * 1000L;
+				actor = in.readInt();
+				if (type == MOVE) {
+					x = in.readFloat();
+					y = in.readFloat();
+					z = in.readFloat();
+				} else if (type != ADD && type != DROP) {
+					close();
+					throw new IOException(name + ": bad record type " + type);
+				}
+			} catch (EOFException e) {
+				System.out.println(name + ": truncated actor log");
+				close();
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * stop reading
+		 */
+		public void close() {
+			if (in == null)
+				return;
+			try {
+				in.close();
+			} catch (IOException e) {
+				// we're done with it anyway
+			}
+			in = null;
+		}
+	}
+
+	/**
+	 * play a log back
+	 *
+	 * @param f			log to be replayed
+	 * @param p			what it is to be replayed into
+	 * @param realtime	pace as recorded (vs as fast as possible)
+	 * @return			number of records replayed
+	 */
+	public static long replay( File f, Player p, boolean realtime ) throws IOException {
+		Reader in = new Reader(f);
+		long n = 0;
+		try {
+			long start = System.nanoTime();
+			while (in.next()) {
+				if (realtime) {
+					long wait = start + in.when - System.nanoTime();
+					if (wait > 0) {
+						try {
+							Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							break;
+						}
+					}
+				}
+
+				switch (in.type) {
+				case ADD:
+					p.addActor(in.actor);
+					break;
+				case DROP:
+					p.dropActor(in.actor);
+					break;
+				case MOVE:
+					p.update(in.actor, new Coord(in.x, in.y, in.z));
+					break;
+				}
+				n++;
+			}
+		} finally {
+			in.close();
+		}
+		return n;
+	}
+}
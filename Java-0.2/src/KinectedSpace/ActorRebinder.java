@@ -0,0 +1,202 @@
+package KinectedSpace;
+
+/**
+ * An ActorRebinder keeps actors' identities across a sensor restart
+ *
+ *   A restarted sensor has forgotten everybody, and re-detects them
+ *   (a moment later) as new users.  Rather than tell the space that
+ *   every actor left and a crowd of strangers arrived, the actors who
+ *   were present when the sensor was lost are held (as orphans) for a
+ *   grace period.  A newly detected user whose first position is close
+ *   to an orphan's last one is taken to be that actor, and reported
+ *   under the old actor number (with no arrival event).  Orphans who
+ *   are not found by the end of the grace period are dropped, and new
+ *   users who matched nobody are announced as usual.
+ *
+ *   The source's own actor numbers (raw) and events pass through here
+ *   on their way to the space: without orphans, unchanged.  translate
+ *   is called on the acquisition thread, in SensorSource.next, but
+ *   restarted is called on ThreadedSource's watchdog thread, in
+ *   Recoverable.restart.  The sources hold their own lock around
+ *   both (so a reader that was slow, rather than hung, cannot run
+ *   into a restart), and the replacement reader is only started once
+ *   restart has returned.
+ */
+public class ActorRebinder {
+
+	private static final float REBIND = 500;	// furthest an actor can have moved (mm)
+	private static final long GRACE = 3000000000L;	// how long to hold orphans (ns)
+	private static final int MAX = 4 * SensorFrame.MAX_ACTORS;	// table sizes
+
+	private ActorEvents out;	// events, as the space should see them
+
+	private int raw[], bound[];	// raw actor -> old actor number
+	private int binds;
+	private int pending[];		// raw arrivals not yet announced
+	private int pendings;
+	private int orphan[];		// actors lost in a restart
+	private boolean placed[];	// do we know where they were
+	private float ox[], oz[];	// where they were
+	private int orphans;
+	private long deadline;		// end of the grace period
+
+	private long kept;			// actors rebound after a restart
+	private long lost;			// actors not found after a restart
+
+	public ActorRebinder() {
+		out = new ActorEvents();
+		raw = new int[MAX];
+		bound = new int[MAX];
+		pending = new int[MAX];
+		orphan = new int[MAX];
+		placed = new boolean[MAX];
+		ox = new float[MAX];
+		oz = new float[MAX];
+	}
+
+	/**
+	 * @return queue of actor arrivals and departures (for the space)
+	 */
+	public ActorEvents events() {
+		return out;
+	}
+
+	/**
+	 * the sensor has been restarted
+	 *
+	 * @param last	the last frame from the old sensor (as the space saw it)
+	 * @param now	time of the restart
+	 */
+	public void restarted( SensorFrame last, long now ) {
+		// the old sensor's numbers mean nothing to the new one
+		//	(and its unannounced arrivals never happened)
+		binds = 0;
+		pendings = 0;
+
+		for( int i = 0; i < last.count; i++ ) {
+			if (find(orphan, orphans, last.actor[i]) >= 0 || orphans >= MAX)
+				continue;
+			orphan[orphans] = last.actor[i];
+			placed[orphans] = last.valid[i];
+			ox[orphans] = last.x[i];
+			oz[orphans] = last.z[i];
+			orphans++;
+		}
+		deadline = now + GRACE;
+	}
+
+	/**
+	 * pass the source's events on, and renumber a frame's actors
+	 *
+	 * @param in	the source's (raw) events
+	 * @param f		frame (with raw actor numbers) to be renumbered
+	 */
+	public void translate( ActorEvents in, SensorFrame f ) {
+		int e;
+		while( (e = in.poll()) != 0 ) {
+			if (e > 0) {
+				if (orphans > 0 && pendings < MAX)
+					pending[pendings++] = e;	// might be somebody we lost
+				else
+					out.add(e);
+				continue;
+			}
+			int b = find(raw, binds, -e);
+			int p = find(pending, pendings, -e);
+			if (b >= 0) {
+				out.drop(bound[b]);
+				binds--;
+				raw[b] = raw[binds];
+				bound[b] = bound[binds];
+			} else if (p >= 0) {
+				pendings = remove(pending, pendings, p);	// never announced
+			} else {
+				out.drop(-e);
+			}
+		}
+		if (binds == 0 && orphans == 0 && pendings == 0)
+			return;
+
+		for( int i = 0; i < f.count; i++ ) {
+			int b = find(raw, binds, f.actor[i]);
+			if (b >= 0) {
+				f.actor[i] = bound[b];
+				continue;
+			}
+			int p = find(pending, pendings, f.actor[i]);
+			if (p < 0 || !f.valid[i])
+				continue;		// (not one we have to place yet)
+
+			// closest orphan (if any are close enough)
+			int best = -1;
+			float closest = REBIND * REBIND;
+			for( int o = 0; o < orphans; o++ ) {
+				if (!placed[o])
+					continue;
+				float dx = f.x[i] - ox[o];
+				float dz = f.z[i] - oz[o];
+				float d = dx * dx + dz * dz;
+				if (d < closest) {
+					closest = d;
+					best = o;
+				}
+			}
+			pendings = remove(pending, pendings, p);
+			if (best >= 0 && binds < MAX) {
+				raw[binds] = f.actor[i];
+				bound[binds++] = orphan[best];
+				f.actor[i] = orphan[best];
+				kept++;
+				orphans = removeOrphan(best);
+			} else {
+				out.add(f.actor[i]);
+			}
+		}
+
+		// give up on anybody who hasn't turned up
+		if (orphans > 0 && f.time - deadline > 0) {
+			for( int o = 0; o < orphans; o++ )
+				out.drop(orphan[o]);
+			lost += orphans;
+			orphans = 0;
+			for( int i = 0; i < pendings; i++ )
+				out.add(pending[i]);
+			pendings = 0;
+		}
+	}
+
+	private static int find( int a[], int n, int v ) {
+		for( int i = 0; i < n; i++ )
+			if (a[i] == v)
+				return i;
+		return -1;
+	}
+
+	private static int remove( int a[], int n, int i ) {
+		a[i] = a[n - 1];
+		return n - 1;
+	}
+
+	private int removeOrphan( int i ) {
+		int n = orphans - 1;
+		orphan[i] = orphan[n];
+		placed[i] = placed[n];
+		ox[i] = ox[n];
+		oz[i] = oz[n];
+		return n;
+	}
+
+	/**
+	 * @return actors who kept their identity through a restart
+	 */
+	public long kept() {
+		return kept;
+	}
+
+	/**
+	 * @return actors who were lost in a restart
+	 */
+	public long lost() {
+		return lost;
+	}
+}
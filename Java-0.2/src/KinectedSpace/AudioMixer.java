@@ -0,0 +1,395 @@
+package KinectedSpace;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.SourceDataLine;
+
+import ActiveSpace.Coord;
+
+/**
+ * An AudioMixer plays many (short) sounds at once, each panned to
+ * the position of the actor that triggered it
+ *
+ *   There is a single output line, opened with a small (two period)
+ *   buffer, and a fixed pool of voices.  Sounds are decoded (once) to
+ *   stereo floats at the mixer's rate and cached.  Every period the
+ *   mixer thread sums the active voices, each with its own left/right
+ *   gain, into a preallocated float buffer, converts that to 16 bit
+ *   samples in a preallocated byte buffer, and writes it to the line.
+ *   Nothing is allocated in the mixing loop.
+ *
+ *   Starting a voice only sets its fields and then (last) its volatile
+ *   active flag, so the mixer thread never has to take a lock.
+ */
+public class AudioMixer implements Runnable {
+
+	public static final float RATE = 44100;		// output sample rate
+	public static final int PERIOD_MS = 10;		// mix period
+	public static final int VOICES = 32;		// simultaneous sounds
+
+	private static final int FRAMES = (int) (RATE * PERIOD_MS / 1000);	// frames per period
+	private static final int MAX_SOUNDS = 64;	// cached decoded sounds
+
+	private Voice voices[];			// the voice pool
+	private float mix[];			// one period of (stereo) mixed samples
+	private byte out[];				// one period of 16 bit samples
+	private Map<String, float[]> sounds;	// decoded sounds (by name)
+
+	private float left, right;		// x extent of the room
+	private SourceDataLine line;	// where the mix goes
+	private volatile boolean running;
+	private Thread mixer;
+	private int debugLevel;
+
+	// mix-loop timing
+	private long periods;			// periods mixed
+	private long totalNs;			// time spent mixing
+	private long maxNs;				// longest time to mix one period
+	private int refused;			// sounds not played for lack of a voice
+
+	/**
+	 * one of the voices in the pool
+	 */
+	private static class Voice {
+		volatile boolean active;	// is it playing (set last, cleared by mixer)
+		volatile boolean stop;		// stop at the end of this period
+		float data[];		// interleaved stereo samples
+		int length;			// length (in frames)
+		int pos;			// next frame to be played
+		boolean loop;		// repeat until stopped
+		float gainL, gainR;	// per-channel gain
+		Object owner;		// who started it
+	}
+
+	/**
+	 * allocate the voices and mix buffers
+	 */
+	public AudioMixer() {
+		voices = new Voice[VOICES];
+		for( int i = 0; i < VOICES; i++ )
+			voices[i] = new Voice();
+		mix = new float[FRAMES * 2];
+		out = new byte[FRAMES * 4];
+		sounds = new LinkedHashMap<String, float[]>(MAX_SOUNDS, 0.75F, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+				return size() > MAX_SOUNDS;
+			}
+		};
+		left = 0;
+		right = 0;
+		debugLevel = 1;
+	}
+
+	public void debug( int level ) {
+		debugLevel = level;
+	}
+
+	/**
+	 * note the x extent of the room, for panning
+	 *
+	 * @param minX	left edge
+	 * @param maxX	right edge
+	 */
+	public void room( float minX, float maxX ) {
+		left = minX;
+		right = maxX;
+	}
+
+	/**
+	 * open the output line and start the mixer thread
+	 *
+	 * @return	whether or not we were able to get a line
+	 */
+	public boolean start() {
+		AudioFormat format = new AudioFormat(RATE, 16, 2, true, false);
+		try {
+			DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+			line = (SourceDataLine) AudioSystem.getLine(info);
+			line.open(format, 2 * out.length);
+		} catch (Exception e) {
+			System.out.println("Unable to open audio mixer output line");
+			e.printStackTrace();
+			return false;
+		}
+		line.start();
+
+		running = true;
+		mixer = new Thread(this, "AudioMixer");
+		mixer.setDaemon(true);
+		mixer.setPriority(Thread.MAX_PRIORITY);
+		mixer.start();
+		return true;
+	}
+
+	/**
+	 * stop the mixer thread and release the line
+	 */
+	public void shutdown() {
+		running = false;
+		if (mixer != null)
+			mixer.interrupt();
+	}
+
+	/**
+	 * decode a sound (or find it in the cache)
+	 *
+	 * @param filename	name of sound file
+	 * @param pack		pre-decoded media (or null)
+	 * @return			stereo samples at the mixer rate
+	 */
+	public float[] load( String filename, MediaPack pack ) throws Exception {
+		synchronized (sounds) {
+			float s[] = sounds.get(filename);
+			if (s != null)
+				return s;
+		}
+
+		AudioInputStream in;
+		if (pack != null && pack.contains(filename, MediaPack.SOUND))
+			in = pack.sound(filename);
+		else
+			in = AudioSystem.getAudioInputStream(new File(filename));
+		float s[];
+		try {
+			s = decode(in);
+		} finally {
+			in.close();
+		}
+
+		synchronized (sounds) {
+			sounds.put(filename, s);
+		}
+		return s;
+	}
+
+	/**
+	 * decode a stream into interleaved stereo floats at the mixer rate
+	 */
+	private static float[] decode( AudioInputStream in ) throws Exception {
+		in = SoundStreamer.pcm(in);
+		AudioFormat f = in.getFormat();
+		int channels = f.getChannels();
+		AudioFormat pcm16 = new AudioFormat(f.getSampleRate(), 16, channels, true, false);
+		if (!f.matches(pcm16))
+			in = AudioSystem.getAudioInputStream(pcm16, in);
+
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		byte buf[] = new byte[64 * 1024];
+		int n;
+		while ((n = in.read(buf)) > 0)
+			b.write(buf, 0, n);
+		byte bytes[] = b.toByteArray();
+
+		// convert to stereo floats
+		int frames = bytes.length / (2 * channels);
+		float stereo[] = new float[frames * 2];
+		for( int i = 0; i < frames; i++ ) {
+			int o = i * 2 * channels;
+			float l = (short) ((bytes[o] & 0xff) | (bytes[o + 1] << 8)) / 32768.0F;
+			float r = l;
+			if (channels > 1)
+				r = (short) ((bytes[o + 2] & 0xff) | (bytes[o + 3] << 8)) / 32768.0F;
+			stereo[2 * i] = l;
+			stereo[2 * i + 1] = r;
+		}
+
+		// (linearly) resample to the mixer rate
+		float rate = f.getSampleRate();
+		if (rate == RATE || frames < 2)
+			return stereo;
+		int outFrames = (int) ((long) frames * RATE / rate);
+		float resampled[] = new float[outFrames * 2];
+		float step = rate / RATE;
+		for( int i = 0; i < outFrames; i++ ) {
+			float x = i * step;
+			int j = (int) x;
+			if (j >= frames - 1)
+				j = frames - 2;
+			float a = x - j;
+			resampled[2 * i] = stereo[2 * j] + a * (stereo[2 * j + 2] - stereo[2 * j]);
+			resampled[2 * i + 1] = stereo[2 * j + 1] + a * (stereo[2 * j + 3] - stereo[2 * j + 1]);
+		}
+		return resampled;
+	}
+
+	/**
+	 * compute the pan position for a point in the room
+	 *
+	 * @param where	position (null means centered)
+	 * @return		0 (left) to 1 (right)
+	 */
+	public float pan( Coord where ) {
+		if (where == null || right <= left)
+			return 0.5F;
+		float p = (where.x - left) / (right - left);
+		return (p < 0) ? 0 : (p > 1) ? 1 : p;
+	}
+
+	/**
+	 * start playing a sound on a free voice
+	 *
+	 * @param data	stereo samples (from load)
+	 * @param pan	0 (left) to 1 (right)
+	 * @param loop	repeat until stopped
+	 * @param owner	who is playing it (for silence)
+	 * @return		whether or not a voice was available
+	 */
+	public synchronized boolean play( float data[], float pan, boolean loop, Object owner ) {
+		if (data.length < 2)
+			return true;		// nothing to play
+		for( int i = 0; i < VOICES; i++ ) {
+			Voice v = voices[i];
+			if (v.active)
+				continue;
+			v.data = data;
+			v.length = data.length / 2;
+			v.pos = 0;
+			v.loop = loop;
+			// constant power pan
+			v.gainL = (float) Math.cos(pan * Math.PI / 2);
+			v.gainR = (float) Math.sin(pan * Math.PI / 2);
+			v.owner = owner;
+			v.stop = false;
+			v.active = true;	// must be last
+			return true;
+		}
+		refused++;
+		if (debugLevel > 0)
+			System.out.println("Audio mixer: all " + VOICES + " voices busy");
+		return false;
+	}
+
+	/**
+	 * stop all of the voices started by a particular owner
+	 *
+	 * @param owner	(null means everybody)
+	 */
+	public synchronized void silence( Object owner ) {
+		for( int i = 0; i < VOICES; i++ ) {
+			Voice v = voices[i];
+			if (v.active && (owner == null || v.owner == owner))
+				v.stop = true;
+		}
+	}
+
+	/**
+	 * mixer thread: mix and write one period at a time
+	 */
+	public void run() {
+		try {
+			while (running) {
+				long start = System.nanoTime();
+				mix();
+				long t = System.nanoTime() - start;
+				periods++;
+				totalNs += t;
+				if (t > maxNs)
+					maxNs = t;
+				line.write(out, 0, out.length);	// blocks until there is room
+			}
+		} finally {
+			line.stop();
+			line.flush();
+			line.close();
+		}
+	}
+
+	/**
+	 * mix one period of all active voices into the output buffer
+	 */
+	private void mix() {
+		Arrays.fill(mix, 0);
+		for( int v = 0; v < VOICES; v++ ) {
+			Voice voice = voices[v];
+			if (!voice.active)
+				continue;
+			if (voice.stop) {
+				voice.active = false;
+				continue;
+			}
+			float data[] = voice.data;
+			float gl = voice.gainL;
+			float gr = voice.gainR;
+			int pos = voice.pos;
+			for( int i = 0; i < 2 * FRAMES; i += 2 ) {
+				if (pos >= voice.length) {
+					if (!voice.loop)
+						break;
+					pos = 0;
+				}
+				mix[i] += data[2 * pos] * gl;
+				mix[i + 1] += data[2 * pos + 1] * gr;
+				pos++;
+			}
+			voice.pos = pos;
+			if (pos >= voice.length && !voice.loop)
+				voice.active = false;
+		}
+
+		// clip and convert to 16 bit little-endian
+		for( int i = 0, o = 0; i < 2 * FRAMES; i++ ) {
+			float s = mix[i];
+			if (s > 1.0F)
+				s = 1.0F;
+			else if (s < -1.0F)
+				s = -1.0F;
+			int sample = (int) (s * 32767);
+			out[o++] = (byte) sample;
+			out[o++] = (byte) (sample >> 8);
+		}
+	}
+
+	/**
+	 * report how much of the mix period budget we are using
+	 */
+	public void report() {
+		if (periods == 0)
+			return;
+		long budget = PERIOD_MS * 1000000L;
+		System.out.println(String.format(
+				"Audio mixer: %d periods, mix avg %dus max %dus of %dus budget (%.1f%%), %d sounds refused",
+				periods, totalNs / periods / 1000, maxNs / 1000, budget / 1000,
+				(100.0 * maxNs) / budget, refused));
+	}
+
+	/**
+	 * benchmark: time the mixing of a full set of voices (no line needed)
+	 *
+	 * 	usage: AudioMixer [periods]
+	 */
+	public static void main( String args[] ) {
+		int n = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+
+		// a full set of (looping, differently panned) noise voices
+		AudioMixer m = new AudioMixer();
+		float noise[] = new float[(int) RATE * 2];
+		Random r = new Random(0);
+		for( int i = 0; i < noise.length; i++ )
+			noise[i] = r.nextFloat() - 0.5F;
+		for( int i = 0; i < VOICES; i++ )
+			m.play(noise, i / (float) (VOICES - 1), true, null);
+
+		for( int i = 0; i < n; i++ ) {
+			long start = System.nanoTime();
+			m.mix();
+			long t = System.nanoTime() - start;
+			if (i < n / 10)
+				continue;		// let the JIT warm up
+			m.periods++;
+			m.totalNs += t;
+			if (t > m.maxNs)
+				m.maxNs = t;
+		}
+		m.report();
+	}
+}
@@ -0,0 +1,236 @@
+package KinectedSpace;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import ActiveSpace.Actor;
+import ActiveSpace.Coord;
+import ActiveSpace.Space;
+
+/**
+ * main class for the (headless) rule engine benchmark
+ * 		process command line arguments
+ * 		read the regions and rules into a Space, with a TraceMedia sink
+ * 		drive it, at full speed, with a synthetic or recorded workload
+ * 		report positions, triggers and actions per second
+ *
+ * 	The synthetic workload is a (seeded) random walk of a number of
+ * 	actors, bouncing around the area covered by the regions.  A recorded
+ * 	workload is an ActorLog (e.g. of a real show).
+ */
+public class Benchmark implements ActorLog.Player {
+
+	private static String usage[] = {
+		"Benchmark [switches] [regions-file] [rules-file]",
+		"    switches:",
+		"        --regions=regions-file",
+		"        --rules=rules-file",
+		"        --base=prefix",
+		"        --actors=#",
+		"        --steps=#",
+		"        --seed=#",
+		"        --log=actor-log",
+		"        --trace=trace-file",
+		"        --debug=#"
+	};
+
+	private static final String REGIONFILE = "bin/Regions.xml";
+	private static final String RULEFILE = "bin/Rules.xml";
+	private static final String PREFIX = "bin";
+	private static final int ACTORS = 6;
+	private static final int STEPS = 1000000;
+	private static final int TRACE_RECORDS = 64 * 1024;
+	private static final float STEP = 50;		// mm per synthetic step
+	private static final float BORDER = 500;	// mm outside the regions
+
+	private Space s;			// the space being exercised
+	private TraceMedia media;	// where its actions go
+	private long positions;		// positions processed
+	private long triggers;		// positions that triggered rules
+	private Map<Integer, Actor> logged;	// actors in an ActorLog
+
+	public static void main(String args[]) {
+		String regionFile = null;
+		String ruleFile = null;
+		String prefix = null;
+		String logFile = null;
+		String traceFile = null;
+		int actors = ACTORS;
+		int steps = STEPS;
+		long seed = 0;
+		int debug = 0;
+
+		// process the command line arguments (why isn't there a standard for this?)
+		for( int i = 0; i < args.length; i++ ) {
+			if (args[i].contains("regions=")) {
+				regionFile = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("rules=")) {
+				ruleFile = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("base=")) {
+				prefix = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("log=")) {
+				logFile = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("trace=")) {
+				traceFile = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("actors=")) {
+				actors = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+			} else if (args[i].contains("steps=")) {
+				steps = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+			} else if (args[i].contains("seed=")) {
+				seed = Long.parseLong(args[i].substring(args[i].indexOf('=') + 1));
+			} else if (args[i].contains("debug=")) {
+				debug = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+			} else if (args[i].contains("help") || args[i].contains("?")) {
+				usage();
+				return;
+			} else if (regionFile == null) {
+				regionFile = args[i];
+			} else if (ruleFile == null) {
+				ruleFile = args[i];
+			} else {
+				usage();
+				return;
+			}
+		}
+
+		// use default file locations if none are specified
+		if (ruleFile == null)
+			ruleFile = RULEFILE;
+		if (regionFile == null)
+			regionFile = REGIONFILE;
+		if (prefix == null)
+			prefix = PREFIX;
+
+		try {
+			Benchmark b = new Benchmark(regionFile, ruleFile, prefix, traceFile, debug);
+			long start = System.nanoTime();
+			if (logFile != null)
+				ActorLog.replay(new File(logFile), b, false);
+			else
+				b.walk(actors, steps, seed);
+			long elapsed = System.nanoTime() - start;
+			b.report(elapsed);
+			b.media.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	public Benchmark( String regionFile, String ruleFile, String prefix, String traceFile, int debug )
+			throws Exception {
+		media = new TraceMedia(TRACE_RECORDS, (traceFile == null) ? null : new File(traceFile));
+		s = new Space();
+		s.debug(debug);
+		s.readRegions(regionFile, true);
+		s.prefix(prefix);
+		s.readRules(ruleFile);
+		s.media(media);
+		s.processPosition(null, null);		// start-up rule
+	}
+
+	/**
+	 * process one position report (as KinectedSpace.update does)
+	 */
+	private void move( Actor a, Coord pos ) {
+		pos.y = 0;
+		if (s.processPosition(a, pos))
+			triggers++;
+		a.lastPosition(pos);
+		positions++;
+	}
+
+	/**
+	 * synthetic workload: actors bouncing around the room
+	 *
+	 * @param n		number of actors
+	 * @param steps	number of steps each
+	 * @param seed	random number seed
+	 */
+	public void walk( int n, int steps, long seed ) {
+		// figure out the area covered by the regions
+		float minX = s.minX() - BORDER;
+		float maxX = s.maxX() + BORDER;
+		float minZ = s.minZ() - BORDER;
+		float maxZ = s.maxZ() + BORDER;
+
+		// each actor alternates between two (preallocated) positions
+		Random r = new Random(seed);
+		Actor actors[] = new Actor[n];
+		Coord pos[][] = new Coord[n][2];
+		float dx[] = new float[n];
+		float dz[] = new float[n];
+		for( int i = 0; i < n; i++ ) {
+			actors[i] = new Actor("Actor-" + i, null);
+			pos[i][0] = new Coord(minX + r.nextFloat() * (maxX - minX), 0, minZ + r.nextFloat() * (maxZ - minZ));
+			pos[i][1] = new Coord(pos[i][0].x, 0, pos[i][0].z);
+			double angle = r.nextDouble() * 2 * Math.PI;
+			dx[i] = (float) (STEP * Math.cos(angle));
+			dz[i] = (float) (STEP * Math.sin(angle));
+			s.addActor(actors[i]);
+		}
+
+		for( int step = 0; step < steps; step++ ) {
+			for( int i = 0; i < n; i++ ) {
+				Coord from = pos[i][step & 1];
+				Coord to = pos[i][(step + 1) & 1];
+				to.x = from.x + dx[i];
+				to.z = from.z + dz[i];
+				if (to.x < minX || to.x > maxX)
+					dx[i] = -dx[i];
+				if (to.z < minZ || to.z > maxZ)
+					dz[i] = -dz[i];
+				move(actors[i], to);
+			}
+		}
+
+		for( int i = 0; i < n; i++ )
+			s.dropActor(actors[i]);
+	}
+
+	/*
+	 * ActorLog workload: actors are created as they arrive
+	 */
+	public void addActor( int actor ) {
+		if (logged == null)
+			logged = new HashMap<Integer, Actor>();
+		Actor a = new Actor("Actor-" + actor, null);
+		logged.put(actor, a);
+		s.addActor(a);
+	}
+
+	public void dropActor( int actor ) {
+		Actor a = (logged == null) ? null : logged.remove(actor);
+		if (a != null)
+			s.dropActor(a);
+	}
+
+	public void update( int actor, Coord pos ) {
+		Actor a = (logged == null) ? null : logged.get(actor);
+		if (a != null)
+			move(a, pos);
+	}
+
+	/**
+	 * report the throughput
+	 *
+	 * @param ns	elapsed time
+	 */
+	public void report( long ns ) {
+		double secs = ns / 1000000000.0;
+		System.out.println(String.format(
+				"%d positions, %d triggers, %d actions in %.3fs: %.0f positions/s, %.0f triggers/s, %.0f actions/s",
+				positions, triggers, media.calls(), secs,
+				positions / secs, triggers / secs, media.calls() / secs));
+	}
+
+	/**
+	 * print out a usage message
+	 */
+	private static void usage() {
+		for( int i = 0; i < usage.length; i++ )
+			System.out.println(usage[i]);
+	}
+}
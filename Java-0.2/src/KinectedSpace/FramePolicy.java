@@ -0,0 +1,168 @@
+package KinectedSpace;
+
+/**
+ * A FramePolicy keeps the tracking loop from falling behind the sensor
+ *
+ *   It times the processing of each frame against the sensor period,
+ *   and notes how old each frame was when we got to it (lag).  When
+ *   processing (averaged over a few frames) takes more than the period,
+ *   we are "behind", and something has to give:
+ *
+ *   	frames: a real-time source is read through a ThreadedSource,
+ *   		so we only ever get the newest frame, and the ones we
+ *   		could not get to are skipped (counted there as overwritten)
+ *
+ *   	actors: (if decimation is enabled) an actor who has not moved
+ *   		since we last processed his position is left out of the
+ *   		frame, for up to HOLD frames, as he cannot have entered
+ *   		or left a region
+ *
+ *   Sources with no nominal rate (fps=0) are measured but never behind.
+ */
+public class FramePolicy {
+
+	private static final float STILL = 30;	// movement (mm) that isn't
+	private static final int HOLD = 5;		// most consecutive decimations
+	private static final int SMOOTH = 8;	// frames in the processing average
+	private static final long NEVER = -2;	// slot has no previous position
+
+	private long period;		// sensor period (ns, 0 = none)
+	private boolean decimate;	// leave out stationary actors
+	private long average;		// (exponential) average processing time
+	private boolean behind;		// we are taking more than the period
+
+	// per-actor state for decimation
+	private int ids[];			// actor in each slot
+	private float lastX[], lastZ[];	// last processed position
+	private int held[];			// consecutive frames left out
+	private long seen[];		// last frame the actor was in
+
+	// statistics
+	private long frames;		// frames processed
+	private long late;			// frames processed while behind
+	private long decimated;		// actor positions left out
+	private long totalLag;		// sum of frame lag (ns)
+	private long maxLag;		// worst frame lag (ns)
+	private long totalBusy;		// sum of processing times (ns)
+	private long maxBusy;		// worst processing time (ns)
+	private long start;			// when the current frame was started
+
+	/**
+	 * @param fps		nominal sensor rate (0 if none)
+	 * @param decimate	leave out stationary actors when behind
+	 */
+	public FramePolicy( int fps, boolean decimate ) {
+		period = (fps > 0) ? 1000000000L / fps : 0;
+		this.decimate = decimate;
+		average = 0;
+		behind = false;
+
+		int n = SensorFrame.MAX_ACTORS;
+		ids = new int[n];
+		lastX = new float[n];
+		lastZ = new float[n];
+		held = new int[n];
+		seen = new long[n];
+		for( int i = 0; i < n; i++ )
+			seen[i] = NEVER;
+	}
+
+	/**
+	 * called when we start on a frame: note its lag and (if we are
+	 * behind) leave out the actors who haven't moved
+	 *
+	 * @param f	frame about to be processed
+	 */
+	public void start( SensorFrame f ) {
+		start = System.nanoTime();
+		long lag = start - f.time;
+		totalLag += lag;
+		if (lag > maxLag)
+			maxLag = lag;
+		if (behind)
+			late++;
+
+		for( int i = 0; i < f.count; i++ ) {
+			if (!f.valid[i])
+				continue;
+			int s = slot(f.actor[i]);
+			float dx = f.x[i] - lastX[s];
+			float dz = f.z[i] - lastZ[s];
+			boolean still = seen[s] == frames - 1 && dx * dx + dz * dz < STILL * STILL;
+			seen[s] = frames;
+			if (behind && decimate && still && held[s] < HOLD) {
+				f.valid[i] = false;		// nothing to see here
+				held[s]++;
+				decimated++;
+			} else {
+				lastX[s] = f.x[i];
+				lastZ[s] = f.z[i];
+				held[s] = 0;
+			}
+		}
+	}
+
+	/**
+	 * called when we have finished with a frame
+	 */
+	public void done() {
+		long busy = System.nanoTime() - start;
+		totalBusy += busy;
+		if (busy > maxBusy)
+			maxBusy = busy;
+		frames++;
+
+		average += (busy - average) / SMOOTH;
+		boolean was = behind;
+		behind = period > 0 && average > period;
+		if (behind != was && decimate)
+			System.out.println("Tracking " + (behind ? "is falling behind" : "has caught up") +
+					" (" + average / 1000 + "us/frame, budget " + period / 1000 + "us)");
+	}
+
+	/**
+	 * find (or assign) the decimation slot for an actor
+	 */
+	private int slot( int actor ) {
+		int oldest = 0;
+		for( int i = 0; i < ids.length; i++ ) {
+			if (seen[i] != NEVER && ids[i] == actor)
+				return i;
+			if (seen[i] < seen[oldest])
+				oldest = i;
+		}
+		ids[oldest] = actor;
+		seen[oldest] = NEVER;
+		held[oldest] = 0;
+		return oldest;
+	}
+
+	/**
+	 * @return whether or not processing is taking longer than the period
+	 */
+	public boolean behind() {
+		return behind;
+	}
+
+	public long decimated() {
+		return decimated;
+	}
+
+	public long maxLag() {
+		return maxLag;
+	}
+
+	/**
+	 * print out lag and skipped work statistics
+	 */
+	public void report() {
+		if (frames == 0)
+			return;
+		System.out.println(String.format(
+				"Tracking: %d frames (%d while behind), lag avg %.1fms max %.1fms, " +
+				"processing avg %.2fms max %.2fms of %.2fms, %d positions decimated",
+				frames, late, totalLag / frames / 1000000.0, maxLag / 1000000.0,
+				totalBusy / frames / 1000000.0, maxBusy / 1000000.0,
+				period / 1000000.0, decimated));
+	}
+}
@@ -0,0 +1,263 @@
+package KinectedSpace;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * An ImageLoader reads image files directly into display-ready images
+ *
+ *   Camera images are often many times larger than the display window.
+ *   Rather than decoding them at full resolution and letting drawImage
+ *   rescale them on every paint, we ask the decoder to subsample them
+ *   down to (just over) the window size, do one high quality resample
+ *   to the exact window size, and leave the result in the screen's
+ *   compatible format (so that paints are simple blits).
+ */
+public class ImageLoader {
+
+	private GraphicsConfiguration gc;	// display we are loading for
+
+	public ImageLoader( GraphicsConfiguration config ) {
+		gc = config;
+		if (gc == null && !GraphicsEnvironment.isHeadless())
+			gc = GraphicsEnvironment.getLocalGraphicsEnvironment().
+					getDefaultScreenDevice().getDefaultConfiguration();
+	}
+
+	/**
+	 * read an image file, scaled to the specified size
+	 *
+	 * @param file		image file to be read
+	 * @param width		desired image width
+	 * @param height	desired image height
+	 * @return			display compatible image of exactly that size
+	 * @throws IOException
+	 */
+	public BufferedImage load( File file, int width, int height ) throws IOException {
+		ImageInputStream in = ImageIO.createImageInputStream(file);
+		if (in == null)
+			throw new IOException("unable to open " + file);
+
+		BufferedImage decoded;
+		try {
+			Iterator<ImageReader> it = ImageIO.getImageReaders(in);
+			if (!it.hasNext())
+				throw new IOException("unrecognized image format: " + file);
+			ImageReader reader = it.next();
+			try {
+				reader.setInput(in, true, true);
+
+				// subsample by the largest factor that still leaves us >= window size
+				int w = reader.getWidth(0);
+				int h = reader.getHeight(0);
+				int step = Math.min(w / width, h / height);
+				ImageReadParam param = reader.getDefaultReadParam();
+				if (step > 1)
+					param.setSourceSubsampling(step, step, 0, 0);
+				decoded = reader.read(0, param);
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			in.close();
+		}
+
+		return( fit(decoded, width, height) );
+	}
+
+	/**
+	 * read an image file into an existing (e.g. pooled) image
+	 * 		the file is decoded (subsampled) straight into a reusable
+	 * 		buffer, which is then resampled into dst, so (once that buffer
+	 * 		exists) reading a series of same-sized images allocates none
+	 *
+	 * @param file		image file to be read
+	 * @param dst		image to be overwritten (whose size it is scaled to)
+	 * @param raw		decode buffer returned by the last call (or null)
+	 * @return			decode buffer, to be passed in next time
+	 * @throws IOException
+	 */
+	public BufferedImage load( File file, BufferedImage dst, BufferedImage raw ) throws IOException {
+		ImageInputStream in = ImageIO.createImageInputStream(file);
+		if (in == null)
+			throw new IOException("unable to open " + file);
+
+		try {
+			Iterator<ImageReader> it = ImageIO.getImageReaders(in);
+			if (!it.hasNext())
+				throw new IOException("unrecognized image format: " + file);
+			ImageReader reader = it.next();
+			try {
+				reader.setInput(in, true, true);
+
+				// subsample by the largest factor that still leaves us >= dst size
+				int w = reader.getWidth(0);
+				int h = reader.getHeight(0);
+				int step = Math.max(1, Math.min(w / dst.getWidth(), h / dst.getHeight()));
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(step, step, 0, 0);
+
+				// decode into the last buffer, if it is the right size and type
+				int sw = (w + step - 1) / step;
+				int sh = (h + step - 1) / step;
+				if (raw == null || raw.getWidth() != sw || raw.getHeight() != sh ||
+						!decodable(reader, raw))
+					raw = reader.getImageTypes(0).next().createBufferedImage(sw, sh);
+				param.setDestination(raw);
+				reader.read(0, param);
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			in.close();
+		}
+
+		Graphics2D g = dst.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+		g.setRenderingHint(RenderingHints.KEY_RENDERING,
+				RenderingHints.VALUE_RENDER_QUALITY);
+		g.drawImage(raw, 0, 0, dst.getWidth(), dst.getHeight(), null);
+		g.dispose();
+		return raw;
+	}
+
+	/**
+	 * @return whether or not a reader can decode into an image
+	 */
+	private static boolean decodable( ImageReader reader, BufferedImage img ) throws IOException {
+		Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+		while (types.hasNext()) {
+			ImageTypeSpecifier t = types.next();
+			if (t.getBufferedImageType() == img.getType() &&
+					t.getColorModel().equals(img.getColorModel()))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * convert an image into a display compatible image of a specified size
+	 *
+	 * @param src		image to be converted
+	 * @param width		desired width
+	 * @param height	desired height
+	 * @return			converted image (src itself if no work was needed)
+	 */
+	public BufferedImage fit( BufferedImage src, int width, int height ) {
+		if (src.getWidth() == width && src.getHeight() == height && compatible(src))
+			return src;
+
+		BufferedImage dst = create(width, height);
+		Graphics2D g = dst.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+		g.setRenderingHint(RenderingHints.KEY_RENDERING,
+				RenderingHints.VALUE_RENDER_QUALITY);
+		g.drawImage(src, 0, 0, width, height, null);
+		g.dispose();
+		return dst;
+	}
+
+	/**
+	 * allocate a new (opaque) display compatible image
+	 *
+	 * @param width
+	 * @param height
+	 * @return	new image
+	 */
+	public BufferedImage create( int width, int height ) {
+		if (gc == null)
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		return gc.createCompatibleImage(width, height, Transparency.OPAQUE);
+	}
+
+	/**
+	 * @return whether or not an image is already in our display format
+	 */
+	private boolean compatible( BufferedImage img ) {
+		if (gc == null)
+			return img.getType() == BufferedImage.TYPE_INT_RGB;
+		return img.getColorModel().equals(gc.getColorModel(Transparency.OPAQUE));
+	}
+
+	/**
+	 * benchmark: compare the old (full decode, scale on every paint)
+	 * and new (decode to size, blit on every paint) approaches on
+	 * every image in a directory
+	 *
+	 * 	usage: ImageLoader directory [width height [paints]]
+	 */
+	public static void main( String args[] ) throws IOException {
+		if (args.length < 1) {
+			System.out.println("usage: ImageLoader directory [width height [paints]]");
+			return;
+		}
+		File dir = new File(args[0]);
+		int width = (args.length > 2) ? Integer.parseInt(args[1]) : 1024;
+		int height = (args.length > 2) ? Integer.parseInt(args[2]) : 768;
+		int paints = (args.length > 3) ? Integer.parseInt(args[3]) : 20;
+
+		File files[] = dir.listFiles();
+		if (files == null) {
+			System.out.println("Unable to read directory: " + dir);
+			return;
+		}
+
+		ImageLoader loader = new ImageLoader(null);
+		BufferedImage screen = loader.create(width, height);
+		Graphics2D g = screen.createGraphics();
+		Runtime rt = Runtime.getRuntime();
+
+		for( int i = 0; i < files.length; i++ ) {
+			if (!files[i].isFile())
+				continue;
+
+			// the old way: full decode, scaled on every paint
+			System.gc();
+			long before = rt.totalMemory() - rt.freeMemory();
+			long t = System.nanoTime();
+			BufferedImage full = ImageIO.read(files[i]);
+			if (full == null)
+				continue;
+			long oldLoad = System.nanoTime() - t;
+			long oldMem = rt.totalMemory() - rt.freeMemory() - before;
+			t = System.nanoTime();
+			for( int p = 0; p < paints; p++ )
+				g.drawImage(full, 0, 0, width, height, null);
+			long oldPaint = (System.nanoTime() - t) / paints;
+			full = null;
+
+			// the new way: decode to size, blit on every paint
+			System.gc();
+			before = rt.totalMemory() - rt.freeMemory();
+			t = System.nanoTime();
+			BufferedImage fitted = loader.load(files[i], width, height);
+			long newLoad = System.nanoTime() - t;
+			long newMem = rt.totalMemory() - rt.freeMemory() - before;
+			t = System.nanoTime();
+			for( int p = 0; p < paints; p++ )
+				g.drawImage(fitted, 0, 0, null);
+			long newPaint = (System.nanoTime() - t) / paints;
+
+			System.out.println(String.format(
+					"%-30s load %6dms -> %6dms  paint %8dus -> %6dus  heap %6dKB -> %5dKB",
+					files[i].getName(), oldLoad / 1000000, newLoad / 1000000,
+					oldPaint / 1000, newPaint / 1000, oldMem / 1024, newMem / 1024));
+		}
+		g.dispose();
+	}
+}
@@ -0,0 +1,265 @@
+package KinectedSpace;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Composite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+import ActiveSpace.MediaActions.Transition;
+
+/**
+ * An ImageRenderer composes the displayed image on a fixed-rate render clock
+ *
+ *   Callers (e.g. the sensor thread) only post the next image and the
+ *   desired transition, which returns immediately.  A render thread,
+ *   ticking at a fixed frame rate, blends from the previous frame to
+ *   the new image into a back buffer, and then swaps it with the front
+ *   buffer that paint() draws.  All of the buffers (and the alpha
+ *   composites for each blending level) are allocated up front, so
+ *   running a transition allocates nothing per frame.
+ */
+public class ImageRenderer implements Runnable {
+
+	private Component target;		// who we repaint
+	private long period;			// render clock period (ns)
+
+	private BufferedImage front;	// frame being displayed
+	private BufferedImage back;		// frame being composed
+	private Graphics2D backG;		// graphics context for back buffer
+	private Graphics2D frontG;		// graphics context for front buffer
+	private BufferedImage from;		// frame we are transitioning from
+	private Graphics2D fromG;		// graphics context for that frame
+	private BufferedImage black;	// a blank frame
+	private Composite alpha[];		// pre-computed blending levels
+
+	// current transition (only touched by the render thread)
+	private Image to;				// image we are transitioning to
+	private Transition type;		// type of transition
+	private long start;				// when it started (ns)
+	private long duration;			// how long it should take (ns)
+	private boolean busy;			// is a transition in progress
+
+	// next transition (posted by callers)
+	private Image nextImage;
+	private Transition nextType;
+	private int nextMsecs;
+	private boolean posted;
+
+	private SequencePlayer sequence;	// source of animated frames
+
+	private volatile boolean running;
+	private Thread clock;
+
+	private static final int LEVELS = 256;		// distinct blending levels
+
+	/**
+	 * allocate the frame buffers for a renderer
+	 *
+	 * @param target	component to be repainted with each new frame
+	 * @param loader	source of display compatible images
+	 * @param width		display width
+	 * @param height	display height
+	 * @param fps		render clock frame rate
+	 */
+	public ImageRenderer( Component target, ImageLoader loader, int width, int height, int fps ) {
+		this.target = target;
+		this.period = 1000000000L / fps;
+
+		front = loader.create(width, height);
+		back = loader.create(width, height);
+		from = loader.create(width, height);
+		black = loader.create(width, height);
+		frontG = front.createGraphics();
+		backG = back.createGraphics();
+		fromG = from.createGraphics();
+		Graphics2D g = black.createGraphics();
+		g.setColor(Color.black);
+		g.fillRect(0, 0, width, height);
+		g.dispose();
+
+		alpha = new Composite[LEVELS];
+		for( int i = 0; i < LEVELS; i++ )
+			alpha[i] = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, i / (float) (LEVELS - 1));
+
+		to = black;
+		busy = false;
+		posted = false;
+	}
+
+	/**
+	 * start the render clock
+	 */
+	public void start() {
+		running = true;
+		clock = new Thread(this, "ImageRenderer");
+		clock.setDaemon(true);
+		clock.start();
+	}
+
+	/**
+	 * stop the render clock
+	 */
+	public void stop() {
+		running = false;
+		if (clock != null)
+			clock.interrupt();
+	}
+
+	/**
+	 * post a new image to be displayed
+	 *
+	 * @param img	window sized image (null means black)
+	 * @param t		type of transition
+	 * @param msecs	duration of the transition
+	 */
+	public synchronized void show( Image img, Transition t, int msecs ) {
+		nextImage = (img == null) ? black : img;
+		nextType = (msecs <= 0) ? Transition.CUT : t;
+		nextMsecs = msecs;
+		posted = true;
+	}
+
+	/**
+	 * take animated frames from a sequence player on each tick
+	 *
+	 * @param s	sequence player (or null)
+	 */
+	public synchronized void animate( SequencePlayer s ) {
+		sequence = s;
+	}
+
+	/**
+	 * draw the most recently completed frame
+	 */
+	public synchronized void paint( Graphics g ) {
+		g.drawImage(front, 0, 0, null);
+	}
+
+	/**
+	 * the render clock: compose a frame on each tick
+	 */
+	public void run() {
+		long next = System.nanoTime();
+		while (running) {
+			long now = System.nanoTime();
+			if (tick(now))
+				target.repaint();
+
+			// wait for the next tick (dropping ticks if we fell behind)
+			next += period;
+			if (next < now)
+				next = now + period;
+			long delay = next - System.nanoTime();
+			if (delay > 0) {
+				try {
+					Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * compose the next frame
+	 *
+	 * @param now	current time (ns)
+	 * @return		whether or not the displayed frame changed
+	 */
+	private boolean tick( long now ) {
+		// see if a new image has been posted
+		synchronized (this) {
+			if (posted) {
+				fromG.drawImage(front, 0, 0, null);	// start from what is showing
+				to = nextImage;
+				type = nextType;
+				duration = nextMsecs * 1000000L;
+				start = now;
+				busy = true;
+				posted = false;
+				nextImage = null;
+			}
+		}
+		if (!busy)
+			return nextFrame(now);
+
+		// figure out how far along we are
+		float t = (duration <= 0) ? 1.0F : (now - start) / (float) duration;
+		if (t >= 1.0F) {
+			t = 1.0F;
+			busy = false;
+		}
+
+		switch (type) {
+		case CROSSFADE:
+			backG.drawImage(from, 0, 0, null);
+			backG.setComposite(alpha[level(t)]);
+			backG.drawImage(to, 0, 0, null);
+			backG.setComposite(alpha[LEVELS - 1]);
+			break;
+
+		case FADE:
+			backG.drawImage(black, 0, 0, null);
+			if (t < 0.5F) {		// fading out the old
+				backG.setComposite(alpha[level(1.0F - (2 * t))]);
+				backG.drawImage(from, 0, 0, null);
+			} else {			// fading in the new
+				backG.setComposite(alpha[level((2 * t) - 1.0F)]);
+				backG.drawImage(to, 0, 0, null);
+			}
+			backG.setComposite(alpha[LEVELS - 1]);
+			break;
+
+		default:			// CUT
+			backG.drawImage(to, 0, 0, null);
+			busy = false;
+			break;
+		}
+
+		swap();
+		return true;
+	}
+
+	/**
+	 * put up the next frame of an animated sequence (if one is due)
+	 *
+	 * @param now	current time (ns)
+	 * @return		whether or not the displayed frame changed
+	 */
+	private boolean nextFrame( long now ) {
+		SequencePlayer s;
+		synchronized (this) {
+			s = sequence;
+		}
+		Image img = (s == null) ? null : s.frame(now);
+		if (img == null)
+			return false;
+		backG.drawImage(img, 0, 0, null);
+		swap();
+		return true;
+	}
+
+	/**
+	 * swap the newly composed frame into the front
+	 */
+	private synchronized void swap() {
+		BufferedImage b = front;
+		front = back;
+		back = b;
+		Graphics2D g = frontG;
+		frontG = backG;
+		backG = g;
+	}
+
+	/**
+	 * @return blending level for a particular fraction
+	 */
+	private static int level( float f ) {
+		int l = (int) (f * (LEVELS - 1));
+		return (l < 0) ? 0 : (l >= LEVELS) ? LEVELS - 1 : l;
+	}
+}
@@ -5,54 +5,42 @@ package KinectedSpace;
  * 	  a space, monitored by a single kinect
  *    with a set of defined regions
  *    a set of rules defining region entry/exit events
- *    a multi-media player capable of rendering sounds and images
+ *    one or more (named) output channels, each capable of
+ *    rendering sounds and images
  */
 
-import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.FontMetrics;
-import java.awt.Graphics;
-import java.awt.Image;
-import java.awt.event.MouseEvent;
-import java.awt.event.MouseListener;
-import java.awt.event.WindowEvent;
-import java.awt.event.WindowListener;
-import java.awt.image.BufferedImage;
-import java.awt.Font;
-import java.io.BufferedReader;
+import java.awt.Point;
 import java.io.File;
-import java.io.FileReader;
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
-
-import javax.imageio.ImageIO;
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.DataLine;
-import javax.swing.JWindow;
+import java.util.Map;
 
 import ActiveSpace.Actor;
 import ActiveSpace.Coord;
 import ActiveSpace.MediaActions;
 import ActiveSpace.Space;
 
-public class KinectedSpace extends JWindow 
-	implements MediaActions, WindowListener, MouseListener {
-	public boolean finished;	// we have been told to shut down
+public class KinectedSpace implements MediaActions, ActorLog.Player {
+	public volatile boolean finished;	// we have been told to shut down
 	
 	private Space s;			// space in which we are running
 	private Actor actors[];		// the known actors
+	private int numbers[];		// their actor numbers
 	private int updates[];		// and their last update generations
 	private int maxActors;		// upper limit on concurrent actors
 	private int generation;		// monotonically increasing move generation
 	
 	private Dimension size;		// specified window size
-	private Image image;		// active display image
-	private Clip clip;			// active audio clip
-	private String overText[];	// text to put on top of image
-	private Color textColor;	// color in which to render that text
+	private MediaPack pack;		// pre-decoded media (if any)
+	private OutputChannel main;	// default output channel
+	private Map<String, OutputChannel> channels;	// named output channels
+	private List<OutputChannel> outputs;	// each distinct channel
+	private AudioMixer mixer;	// spatial sound mixer (if any)
+	private boolean batching;	// media actions are held until dispatch
+	private ActorLog log;		// record of actor movements (if any)
 	
 	private	int debugLevel;		// how noisy we want to be
 	private int testsRun;		// how many tests have we run
@@ -60,13 +48,9 @@ public class KinectedSpace extends JWindow
 
 	// pseudo-tunable constants
 	private static final int MAX_ACTORS = 10;	// maximum concurrent actors
-	
-	// display text rendering
-	private static final int	DISPLAY_FONT_SIZE = 16;
-	private static final String	DISPLAY_FONT_STYLE = "BOLD";
-	private static final Color	DISPLAY_FONT_COLOR = Color.white;
-	
-	private static final long serialVersionUID = 1L;	// LAME
+	private static final String MAIN_CHANNEL = "main";	// default channel name
+	private static final int SYNTHETIC_ACTORS = 6;	// default simulated crowd
+	private static final int STALL = 1000;			// ms without a frame that is a sensor stall
 	
 	public KinectedSpace( Dimension d ) {
 		size = d;				// note our window size
@@ -74,33 +58,24 @@ public class KinectedSpace extends JWindow
 		ignoreY = true;			// treat space as two dimensional
 		maxActors = MAX_ACTORS;	// limited number of concurrent actors
 		testsRun = 0;			// we haven't run any tests yet
-		clip = null;			// we are not playing any sounds
-		image = null;			// we are not displaying any images
-		overText = null;		// we do not have any overlay text
+		pack = null;			// we have no pre-decoded media
+		mixer = null;			// we play sounds with Clips
 		
 		s = new Space();
 		
-		// create a display window
-		this.setPreferredSize( size );
-		this.pack();
-		this.setVisible(true);
-		blankImage();
-		
-		// choose our text display font, size, color
-		setFontSize(DISPLAY_FONT_SIZE);
-		setFontStyle(DISPLAY_FONT_STYLE);
-		setFontColor(DISPLAY_FONT_COLOR);
+		// create the default display window
+		channels = new HashMap<String, OutputChannel>();
+		outputs = new LinkedList<OutputChannel>();
+		main = new OutputChannel(MAIN_CHANNEL, size, null, this);
+		channels.put(MAIN_CHANNEL, main);
+		outputs.add(main);
+		main.blankImage();
 		
 		// register ourselves as the multi-media player
 		s.media(this);
 		
-		// capture window events
-		addWindowListener(this);
-		
-		// capture mouse events
-		addMouseListener(this);
-		
 		actors = new Actor[maxActors];
+		numbers = new int[maxActors];
 		updates = new int[maxActors];
 		for( int i = 0; i < maxActors; i++) {
 			actors[i] = null;
@@ -115,18 +90,15 @@ public class KinectedSpace extends JWindow
 	 * @return				Actor object
 	 */
 	private Actor findActor( int actorNumber ) {
-		String name = "Actor-" + actorNumber;
+		// see if we already have a record for this actor
+		Actor a = knownActor(actorNumber);
+		if (a != null)
+			return a;
 		
-		// see if we can find a record for this actor
 		int free = 0;
-		for( int i = 0; i < maxActors; i++ ) {
+		for( int i = 0; i < maxActors; i++ )
 			if (actors[i] == null)
 				free++;
-			else if (name.equals(actors[i].toString())) {
-				updates[i] = ++generation;
-				return( actors[i] );
-			}
-		}
 		
 		/*
 		 * Garbage collection
@@ -148,7 +120,8 @@ public class KinectedSpace extends JWindow
 		// allocate a new actor tracker
 		for( int i = 0; i < maxActors; i++ )
 			if (actors[i] == null) {
-				actors[i] = new Actor(name, null);
+				actors[i] = new Actor("Actor-" + actorNumber, null);
+				numbers[i] = actorNumber;
 				updates[i] = 0;
 				return( actors[i] );
 			}
@@ -156,6 +129,22 @@ public class KinectedSpace extends JWindow
 		return( null );		// can't reach
 	}
 	
+	/**
+	 * find a particular (already known) Actor object
+	 * 
+	 * @param actorNumber	(monotonically increasing) actor number
+	 * @return				Actor object (or null if not present)
+	 */
+	private Actor knownActor( int actorNumber ) {
+		for( int i = 0; i < maxActors; i++ ) {
+			if (actors[i] != null && numbers[i] == actorNumber) {
+				updates[i] = ++generation;
+				return( actors[i] );
+			}
+		}
+		return( null );
+	}
+	
 	/**
 	 * note the arrival of a new actor
 	 * 
@@ -163,6 +152,8 @@ public class KinectedSpace extends JWindow
 	 */
 	public void addActor(int actorNumber) {
 		Actor a = findActor(actorNumber);
+		if (log != null)
+			log.added(actorNumber);
 		s.addActor(a);
 	}
 	
@@ -172,11 +163,11 @@ public class KinectedSpace extends JWindow
 	 * @param	number of departed actor
 	 */
 	public void dropActor(int actorNumber) {
-		String name = "Actor-" + actorNumber;
-		
 		// see if we can find a record for this actor
 		for( int i = 0; i < maxActors; i++ ) {
-			if (actors[i] != null && name.equals(actors[i].toString())) {
+			if (actors[i] != null && numbers[i] == actorNumber) {
+				if (log != null)
+					log.dropped(actorNumber);
 				s.dropActor(actors[i]);
 				actors[i] = null;
 				return;
@@ -184,6 +175,122 @@ public class KinectedSpace extends JWindow
 		}
 	}
 	
+	/**
+	 * create the sensor source described by a specification
+	 * 		kinect[:depth-file]				a real Kinect (the default)
+	 * 		synthetic[:actors[,fps[,seed[,stall]]]]	a simulated crowd
+	 * 										(hanging every stall seconds, if fps > 0)
+	 * 		replay:file[,fast]				an actor log (see ReplaySource)
+	 * 		(should be called after the regions have been read)
+	 * 
+	 * @param spec	source specification (null means kinect)
+	 * @return		SensorSource (or null if it could not be created)
+	 */
+	public SensorSource source( String spec ) {
+		String type = (spec == null) ? "kinect" : spec;
+		String parms[] = new String[0];
+		int colon = type.indexOf(':');
+		if (colon > 0) {
+			parms = type.substring(colon + 1).split(",");
+			type = type.substring(0, colon);
+		}
+		
+		SensorSource source = null;
+		try {
+			if (type.equals("kinect")) {
+				source = new OpenNISource((parms.length > 0) ? new File(parms[0]) : null);
+			} else if (type.equals("synthetic")) {
+				int n = (parms.length > 0) ? Integer.parseInt(parms[0].trim()) : SYNTHETIC_ACTORS;
+				int fps = (parms.length > 1) ? Integer.parseInt(parms[1].trim()) : OpenNISource.FPS;
+				long seed = (parms.length > 2) ? Long.parseLong(parms[2].trim()) : 0;
+				SyntheticSource crowd = new SyntheticSource(n, fps, 0, seed, s.minX(), s.maxX(), s.minZ(), s.maxZ());
+				if (parms.length > 3)
+					crowd.stalls(Integer.parseInt(parms[3].trim()));
+				source = crowd;
+			} else if (type.equals("replay") && parms.length > 0) {
+				boolean fast = parms.length > 1 && parms[1].trim().equals("fast");
+				source = new ReplaySource(new File(parms[0]), !fast);
+			} else {
+				System.out.println("Unknown sensor source: " + spec + 
+						" ... expected kinect[:depth-file], synthetic[:actors[,fps[,seed[,stall]]]] or replay:file[,fast]");
+				return null;
+			}
+		} catch (Exception e) {
+			System.out.println("Unable to create sensor source: " + spec);
+			e.printStackTrace();
+			return null;
+		}
+		source.debug(debugLevel);
+		
+		// real-time sources are read on their own thread (and watched for stalls)
+		if (source.fps() > 0) {
+			ThreadedSource t = new ThreadedSource(source);
+			t.watch(STALL);
+			source = t;
+		}
+		return source;
+	}
+	
+	/**
+	 * process a frame from the sensor
+	 * 		apply any actor arrivals and departures (in order)
+	 * 		pass each present actor's position to the space
+	 * 
+	 * @param f			the latest frame
+	 * @param events	actor arrivals and departures (from the source)
+	 */
+	public void process( SensorFrame f, ActorEvents events ) {
+		track(events);
+		evaluate(f);
+	}
+	
+	/**
+	 * apply any actor arrivals and departures (in order)
+	 * 
+	 * @param events	actor arrivals and departures (from the source)
+	 */
+	public void track( ActorEvents events ) {
+		int e;
+		while( (e = events.poll()) != 0 ) {
+			if (e > 0)
+				addActor(e);
+			else
+				dropActor(-e);
+		}
+	}
+	
+	/**
+	 * pass each present actor's position to the space
+	 * 		(which may trigger rules, and so media actions)
+	 * 
+	 * @param f			the latest frame
+	 */
+	public void evaluate( SensorFrame f ) {
+		for(int i = 0; i < f.count; i++)
+			update(f.actor[i], f.position(i));
+	}
+	
+	/**
+	 * hold media actions until dispatch is called (see Scheduler)
+	 * 
+	 * @param hold	whether to hold them (vs pass them on immediately)
+	 */
+	public void batch( boolean hold ) {
+		batching = hold;
+		Iterator<OutputChannel> it = outputs.iterator();
+		while(it.hasNext())
+			it.next().batch(hold);
+	}
+	
+	/**
+	 * pass held media actions on to the output channels
+	 */
+	public void dispatch() {
+		Iterator<OutputChannel> it = outputs.iterator();
+		while(it.hasNext())
+			it.next().flush();
+	}
+	
 	/**
 	 * read a set of region definitions into the space
 	 * 
@@ -219,6 +326,163 @@ public class KinectedSpace extends JWindow
 		s.prefix( base );
 	}
 	
+	/**
+	 * create an additional (named) output channel
+	 * 
+	 * @param spec	name:x,y (window location, on the desktop)
+	 */
+	public void addChannel( String spec ) {
+		String name = spec;
+		Point where = null;
+		int colon = spec.indexOf(':');
+		if (colon > 0) {
+			name = spec.substring(0, colon);
+			String xy[] = spec.substring(colon + 1).split(",");
+			try {
+				where = new Point(Integer.parseInt(xy[0].trim()), Integer.parseInt(xy[1].trim()));
+			} catch (Exception e) {
+				System.out.println("Bad channel location: " + spec + " ... expected name:x,y");
+			}
+		}
+		if (channels.containsKey(name)) {
+			System.out.println("Duplicate output channel: " + name);
+			return;
+		}
+		
+		OutputChannel c = new OutputChannel(name, size, where, this);
+		c.debug(debugLevel);
+		c.pack(pack);
+		c.mixer(mixer);
+		c.blankImage();
+		c.batch(batching);
+		channels.put(name, c);
+		outputs.add(c);
+	}
+	
+	/**
+	 * find the output channel that rules address by a particular name
+	 * 		unknown channels are directed to the main channel
+	 * 
+	 * @param name	name of desired channel (null means the main channel)
+	 * @return		media sink for that channel
+	 */
+	public MediaActions channel( String name ) {
+		if (name == null)
+			return main;
+		OutputChannel c = channels.get(name);
+		if (c == null) {
+			System.out.println("Unknown output channel: " + name + " ... using " + MAIN_CHANNEL);
+			c = main;
+			channels.put(name, c);		// only complain once
+		}
+		return c;
+	}
+	
+	/**
+	 * play (short) sounds through a spatial mixer, panned according
+	 * to where the triggering actor is in the room
+	 * 		(should be called after the regions have been read)
+	 */
+	public void mixer() {
+		mixer = new AudioMixer();
+		mixer.debug(debugLevel);
+		mixer.room(s.minX(), s.maxX());
+		if (!mixer.start()) {
+			mixer = null;
+			return;
+		}
+		Iterator<OutputChannel> it = outputs.iterator();
+		while(it.hasNext())
+			it.next().mixer(mixer);
+	}
+	
+	/**
+	 * report (per channel) media action queue depths and mixer timing
+	 */
+	public void report() {
+		Iterator<OutputChannel> it = outputs.iterator();
+		while(it.hasNext()) {
+			OutputChannel c = it.next();
+			System.out.println("Channel " + c + ": " + c.queueDepth() + " actions queued, max " + 
+					c.maxQueueDepth());
+		}
+		if (mixer != null)
+			mixer.report();
+	}
+	
+	/**
+	 * shut down all of the output channels
+	 */
+	public void shutdown() {
+		if (log != null) {
+			log.close();
+			if (debugLevel > 0)
+				System.out.println("Actor log: " + log.records() + " records");
+			log = null;
+		}
+		Iterator<OutputChannel> it = outputs.iterator();
+		while(it.hasNext())
+			it.next().shutdown();
+		if (mixer != null)
+			mixer.shutdown();
+	}
+	
+	/**
+	 * log every actor arrival, movement and departure (see ActorLog)
+	 * 
+	 * @param filename	log file to be created
+	 */
+	public void log( String filename ) {
+		try {
+			log = new ActorLog(new File(filename));
+		} catch (Exception e) {
+			System.out.println("Unable to create actor log: " + filename);
+			e.printStackTrace();
+			log = null;
+		}
+	}
+	
+	/**
+	 * play back a log of actor movements
+	 * 		(instead of reading a sensor)
+	 * 
+	 * @param filename	log file
+	 * @param realtime	with the original timing (vs as fast as possible)
+	 */
+	public void playback( String filename, boolean realtime ) {
+		try {
+			long start = System.nanoTime();
+			long n = ActorLog.replay(new File(filename), this, realtime);
+			if (debugLevel > 0)
+				System.out.println(String.format("Actor log %s: %d records in %.3fs", 
+						filename, n, (System.nanoTime() - start) / 1000000000.0));
+		} catch (Exception e) {
+			System.out.println("Unable to play back actor log: " + filename);
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * use pre-decoded media from a media pack (see MediaPacker)
+	 * 
+	 * @param filename	media pack file
+	 */
+	public void pack( String filename ) {
+		try {
+			pack = new MediaPack(new File(filename));
+			if (pack.width() != size.width || pack.height() != size.height)
+				System.out.println("Media pack " + filename + " is not " + 
+						size.width + "x" + size.height + " ... images will be rescaled");
+		} catch (Exception e) {
+			System.out.println("Unable to open media pack: " + filename);
+			e.printStackTrace();
+			pack = null;
+		}
+		Iterator<OutputChannel> it = outputs.iterator();
+		while(it.hasNext())
+			it.next().pack(pack);
+	}
+	
 	/**
 	 * return the name of this space
 	 */
@@ -233,6 +497,11 @@ public class KinectedSpace extends JWindow
 	public void debug( int level ) {
 		debugLevel = level;
 		s.debug(debugLevel);
+		Iterator<OutputChannel> it = outputs.iterator();
+		while(it.hasNext())
+			it.next().debug(debugLevel);
+		if (mixer != null)
+			mixer.debug(debugLevel);
 	}
 	
 	/**
@@ -286,8 +555,8 @@ public class KinectedSpace extends JWindow
 		if (ignoreY)
 			pos.y = 0;
 		
-		// ignore reports about non-actors
-		Actor a = findActor(actorNum);
+		// ignore reports about non-actors (or ones that have left)
+		Actor a = knownActor(actorNum);
 		if (a == null)
 			return;
 		
@@ -298,244 +567,60 @@ public class KinectedSpace extends JWindow
 				System.out.println("    Actor " + a + " at " + pos);
 		}
 
+		if (log != null)
+			log.moved(actorNum, pos);
 		s.processPosition(a, pos);		// process the new position
 		a.lastPosition(pos);			// update the known position
 	}
 
-	// TODO I should pull these out into a separate class
+	/*
+	 * media actions that do not name a channel go to the main channel
+	 */
 	public void displayImage(String filename) {
-
-		// FIX this only works for files ... not URLs
-		File file = new File(filename);
-		if (!file.exists()) {
-			System.out.println("Unable to access input image: " + filename);
-			image = null;
-			return;
-		}
-		if (debugLevel > 1)
-			System.out.println("   ... display image file: " + filename);
-		try {
-			image = ImageIO.read(file);
-		} catch (Exception e) {
-			System.out.println("Error reading image file: " + filename);
-			e.printStackTrace();
-			image = null;
-		}
-		
-		repaint();
-	}
-
-	public void blankImage() {
-		if (debugLevel > 1)
-			System.out.println("   ... clear displayed image");
-		image = new BufferedImage((int) size.width, (int) size.height, BufferedImage.TYPE_BYTE_BINARY);
-		repaint();
+		main.displayImage(filename);
 	}
 	
-	/**
-	 * repaint our window with the selected image
-	 * 	implicit parameters:
-	 * 		self.image		image to be rendered
-	 * 		self.overText	array of text lines to put on top of it
-	 * 		self.getFont	current font, size, color
-	 */
-	public void paint( Graphics g ) {
-		int width = (int) size.getWidth();
-		int height = (int) size.getHeight();
-		
-		// render the image (which may be blank)
-		g.drawImage(image, 0, 0, width, (int) height, this);
-		
-		// see if we have any text to put on to pof the image
-		if (overText != null) {
-			// figure out text width and height
-			int textWidth = 0;
-			int textHeight = 0;
-			Font font = getFont();
-			FontMetrics m = getFontMetrics(font);
-			for (int i = 0; i < overText.length; i++) {
-				textHeight += m.getHeight();
-				int w = m.stringWidth(overText[i]);
-				if (w > textWidth)
-					textWidth = w;
-			}
-			
-			// render the text
-			g.setColor(textColor);	// I couldn't find g to do this sooner
-			int row = (textHeight > height) ? 0 : (height - textHeight) / 2;
-			int col = (textWidth > width) ? 0 : (width - textWidth) / 2;
-			for (int i = 0; i < overText.length; i++) {
-				g.drawString(overText[i], col, row);
-				row += m.getHeight();
-			}
-		}
-	}
-
-	/**
-	 * play the sound in the specified file
-	 * @param filename
-	 */
-	public void playSound(String filename) {
-		// FIX this only works for files ... not URLs
-		File file = new File(filename);
-		if (!file.exists()) {
-			System.out.println("Unable to access sound file: " + filename);
-			clip = null;
-			return;
-		}
-		if (debugLevel > 1)
-			System.out.println("   ... play audio file: " + filename);
-		try {
-			AudioInputStream in = AudioSystem.getAudioInputStream(file);
-			AudioFormat format = in.getFormat();
-			DataLine.Info info = new DataLine.Info(Clip.class, format);
-			clip = (Clip) AudioSystem.getLine(info);
-			clip.open(in);
-			clip.start();
-		} catch (Exception e) {
-			System.out.println("Error playing sound file: " + filename);
-			e.printStackTrace();
-			clip = null;
-		}
-	}
-
-	/**
-	 * silence any playing sound
-	 */
-	public void silence() {
-		if (debugLevel > 1)
-			System.out.println("   ... silence");
-		if (clip != null && clip.isRunning()) {
-			clip.stop();
-			clip = null;
-		}
+	public void displayImage(String filename, Transition t, int msecs) {
+		main.displayImage(filename, t, msecs);
 	}
-
-	/**
-	 * display the text in the specified file
-	 * @param filename
-	 */
-	public void displayText(String filename) {
-		overText = null;
-		
-		// FIX this only works for files ... not URLs
-		File file = new File(filename);
-		if (!file.exists()) {
-			System.out.println("Unable to access text file: " + filename);
-			return;
-		}
-		if (debugLevel > 1)
-			System.out.println("   ... display text file: " + filename);
-		List<String> l = new ArrayList<String>();
-		try {
-			BufferedReader r = new BufferedReader(new FileReader(filename));
-			String s;
-			while ((s = r.readLine()) != null)
-				l.add(s);
-			r.close();
-			overText = l.toArray(new String[0]);
-		} catch (Exception e) {
-			System.out.println("Error processing text file: " + filename);
-			e.printStackTrace();
-		}
-		
-		// either way, we now need to refresh the display
-		repaint();
+	
+	public void blankImage() {
+		main.blankImage();
 	}
-
-	/**
-	 * clear the displayed text
-	 */
-	public void clearText() {
-		overText = null;
-		repaint();
+	
+	public void blankImage(Transition t, int msecs) {
+		main.blankImage(t, msecs);
 	}
 	
-	/**
-	 * set font size for displayed text
-	 * @param size	font size
-	 */
-	public void setFontSize(int newSize) {
-		// figure out what we've got
-		Font current = getFont();
-		String name = current.getName();
-		int style = current.getStyle();
-		Font newFont = new Font(name, style, newSize);
-		setFont(newFont);
+	public void playSequence(String dirname, int fps, boolean loop) {
+		main.playSequence(dirname, fps, loop);
 	}
 	
-	/**
-	 * set font name for displayed text
-	 * @param newName	name of desired font
-	 */
-	public void setFontName(String newName) {
-		// figure out what we've got
-		Font current = getFont();
-		int style = current.getStyle();
-		int size = current.getSize();
-		Font newFont = new Font(newName, style, size);
-		setFont(newFont);
+	public void stopSequence() {
+		main.stopSequence();
 	}
 	
-	public void setFontColor(Color color) {
-		textColor = color;
-		// apparently I can't follow the JWindow to its graphics context
-		// in order to directly do a setColor here ... so I just moved that
-		// call into the paint method (which does have the graphics context)
+	public void playSound(String filename) {
+		main.playSound(filename);
 	}
 	
-	/**
-	 * set font name for displayed text
-	 * @param newStile:	"plain", "bold", "italic"
-	 */
-	public void setFontStyle(String newStyle) {
-		// figure out what we've got
-		Font current = getFont();
-		String name = current.getName();
-		int size = current.getSize();
-		int style = Font.PLAIN;
-		if (newStyle.equals("BOLD") || newStyle.equals("bold"))
-			style = Font.BOLD;
-		else if (newStyle.equals("ITALIC") || newStyle.equals("italic"))
-			style = Font.ITALIC;
-		Font newFont = new Font(name, style, size);
-		setFont(newFont);
+	public void playSound(String filename, Coord where) {
+		main.playSound(filename, where);
 	}
 	
+	public void loopSound(String filename) {
+		main.loopSound(filename);
+	}
 	
-	// repaint the window when ever it reappears
-	public void windowOpened(WindowEvent arg0) {
-		if (debugLevel > 1)
-			System.out.println("Image window opened");
-		repaint();
+	public void silence() {
+		main.silence();
 	}
 	
-	public void windowActivated(WindowEvent arg0) {
-		if (debugLevel > 1)
-			System.out.println("Image window activated");
-		repaint();
+	public void displayText(String filename) {
+		main.displayText(filename);
 	}
 	
-	public void windowDeiconified(WindowEvent arg0) {
-		if (debugLevel > 1)
-			System.out.println("Image window de-iconified");
-		repaint();
+	public void clearText() {
+		main.clearText();
 	}
-
-	public void windowClosed(WindowEvent arg0) {}
-	public void windowClosing(WindowEvent arg0) {}
-	public void windowDeactivated(WindowEvent arg0) {}
-	public void windowIconified(WindowEvent arg0) {}
-
-
-	// mouse click in the window means shutdown
-	public void mouseClicked(MouseEvent arg0) {
-		if (debugLevel > 0)
-			System.out.println("Mouse Click in display window ... shutting down");
-		finished = true;
-	}
-	public void mouseEntered(MouseEvent arg0) {}
-	public void mouseExited(MouseEvent arg0) {}
-	public void mousePressed(MouseEvent arg0) {}
-	public void mouseReleased(MouseEvent arg0) {}
 }
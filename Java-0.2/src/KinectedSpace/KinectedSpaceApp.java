@@ -1,6 +1,9 @@
 package KinectedSpace;
 
 import java.awt.Dimension;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 
 /**
  * main class
@@ -12,9 +15,14 @@ import java.awt.Dimension;
  */
 public class KinectedSpaceApp {
 	
-	private UserSensor sense;	// reference to KinectSensor Instance
+	private SensorSource sense;	// where actor positions come from
+	private FramePolicy policy;	// what to do when we fall behind
 	private KinectedSpace room;	// reference to KinectedSpace instance
 	private int debugLevel;		// level of diagnostics
+	private Scheduler scheduler;	// runs the main loop
+	private int tickRate;		// main loop ticks per second
+	private SensorFrame frame;	// the latest frame
+	private boolean fresh;		// we got a new frame this tick
 
 	private static String usage[] = {
 		"kinectedSpace.java [switches] [regions-file] [rules-file]",
@@ -22,6 +30,14 @@ public class KinectedSpaceApp {
 		"        --regions=regions-file",
 		"        --rules=rules-file",
 		"        --base=prefix",
+		"        --pack=media-pack",
+		"        --channel=name:x,y",
+		"        --mixer",
+		"        --source=kinect[:depth-file]|synthetic[:actors[,fps[,seed[,stall]]]]|replay:file[,fast]",
+		"        --decimate",
+		"        --tick=#",
+		"        --log=actor-log",
+		"        --playback=actor-log[,fast]",
 		"        --height=#",
 		"        --width=#",
 		"        --test=#",
@@ -35,17 +51,27 @@ public class KinectedSpaceApp {
 	private static final int WIDTH = 1024;
 	
 	private static final int MS_PER_STEP = 10;		// test movement rate
+	private static final int TICK_RATE = 60;		// main loop ticks per second
+	private static final int REPORT_MS = 10000;		// time between (debug) timing reports
 	
 	public static void main(String args[]) {
 	
 		String regionFile = null;
 		String ruleFile = null;
 		String prefix = null;
+		String packFile = null;
+		List<String> channels = new LinkedList<String>();
+		boolean mixer = false;
+		String source = null;
+		boolean decimate = false;
+		String logFile = null;
+		String playback = null;
 		int height = HEIGHT;
 		int width = WIDTH;
 		int testPasses = 0;
 		int debug = 0;
 		int delay = MS_PER_STEP;
+		int tick = TICK_RATE;
 		
 		// process the command line arguments (why isn't there a standard for this?)
 		for( int i = 0; i < args.length; i++ ) {
@@ -55,6 +81,20 @@ public class KinectedSpaceApp {
 				ruleFile = args[i].substring(args[i].indexOf('=') + 1);
 			} else if (args[i].contains("base=")) {
 				prefix = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("pack=")) {
+				packFile = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("channel=")) {
+				channels.add(args[i].substring(args[i].indexOf('=') + 1));
+			} else if (args[i].contains("source=")) {
+				source = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("playback=")) {
+				playback = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("log=")) {
+				logFile = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("decimate")) {
+				decimate = true;
+			} else if (args[i].contains("mixer")) {
+				mixer = true;
 			} else if (args[i].contains("height=")) {
 				height = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
 			} else if (args[i].contains("width=")) {
@@ -63,6 +103,8 @@ public class KinectedSpaceApp {
 				debug = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
 			} else if (args[i].contains("test=")) {
 				testPasses = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+			} else if (args[i].contains("tick=")) {
+				tick = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
 			} else if (args[i].contains("delay=")) {
 				delay = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
 			} else if (args[i].contains("help") || args[i].contains("?")) {
@@ -89,18 +131,34 @@ public class KinectedSpaceApp {
 		// instantiate a KinectedSpace
 		Dimension d = new Dimension(width, height);
 		KinectedSpaceApp app = new KinectedSpaceApp(regionFile, ruleFile, prefix, d, debug);
+		Iterator<String> it = channels.iterator();
+		while(it.hasNext())
+			app.room.addChannel(it.next());
+		if (packFile != null)
+			app.room.pack(packFile);
+		if (mixer)
+			app.room.mixer();
+		if (logFile != null)
+			app.room.log(logFile);
+		app.tickRate = (tick > 0) ? tick : TICK_RATE;
 		if (testPasses > 0) {
-			while( app.room.test(testPasses) ) {
-				try {
-					Thread.sleep(delay);
-				} catch (InterruptedException ex) {
-					Thread.currentThread().interrupt();
-				}
-			}
+			app.test(testPasses, delay);
+			System.exit(0);
+		} else if (playback != null) {
+			boolean fast = playback.endsWith(",fast");
+			if (fast)
+				playback = playback.substring(0, playback.length() - 5);
+			app.room.start();
+			app.room.playback(playback, !fast);
+			if (debug > 0)
+				app.room.report();
+			app.room.shutdown();
 			System.exit(0);
 		} else {
-			app.sense = new UserSensor();
-			app.sense.debug(debug);
+			app.sense = app.room.source(source);
+			if (app.sense == null)
+				System.exit(1);
+			app.policy = new FramePolicy(app.sense.fps(), decimate);
 			app.run();
 		}
 	}
@@ -123,55 +181,106 @@ public class KinectedSpaceApp {
 	}
 	
 	/**
-	 * main loop
-	 * 		update the sensor
-	 * 		check for added and dropped actors
-	 * 		for each user
-	 * 			get his position, and pass it to the room
+	 * main loop (see Scheduler), one tick at a time:
+	 * 		acquire: take the newest frame from the sensor (if there is one)
+	 * 		track:   apply actor arrivals and departures
+	 * 		regions: pass positions to the space (perhaps less stationary actors)
+	 * 		timers:  whatever is due (e.g. periodic timing reports)
+	 * 		media:   hand the resulting media actions to the output channels
+	 * 	a real-time source is polled on a fixed tick, whereas one with no
+	 * 	nominal rate (e.g. a fast replay) is read as fast as it can be
 	 */
 	public void run() {
 		room.start();
+		frame = new SensorFrame();
+		final ThreadedSource threaded = (sense instanceof ThreadedSource) ? (ThreadedSource) sense : null;
+		scheduler = new Scheduler((threaded != null) ? 1000000000L / tickRate : 0);
+		room.batch(true);
 		
-		int minActor = -1;
-		int maxActor = -1;
-		int actors = 0;
-		
-		while( !room.finished) {
-			sense.update();
-			int n = sense.numUsers();
-			int lowest = 99999;
-			
-			// look for added or lost actors
-			if (n != actors) {
-				for(int i = 0; i < n; i++) {
-					// see if any new actors have been added
-					int a = sense.actor(i);
-					if (a > maxActor) {
-						room.addActor(a);
-						maxActor = a;
-					} else if (a < lowest)
-						lowest = a;
+		scheduler.add("acquire", new Scheduler.Stage() {
+			public void run( long now ) {
+				if (room.finished) {
+					fresh = false;
+					scheduler.stop();
+				} else if (threaded != null) {
+					fresh = threaded.poll(frame);
+					if (!fresh && threaded.ended())
+						scheduler.stop();	// end of recording
+				} else {
+					fresh = sense.next(frame);
+					if (!fresh)
+						scheduler.stop();	// end of recording
 				}
-				
-				// see if we lost any actors
-				if (lowest != 99999) {
-					if (minActor == -1)
-						minActor = lowest;
-					while(lowest > minActor) {
-						room.dropActor(minActor++);
-					}
+			}
+		});
+		scheduler.add("track", new Scheduler.Stage() {
+			public void run( long now ) {
+				if (fresh)
+					policy.start(frame);
+				room.track(sense.events());
+			}
+		});
+		scheduler.add("regions", new Scheduler.Stage() {
+			public void run( long now ) {
+				if (fresh) {
+					room.evaluate(frame);
+					policy.done();
 				}
-		
-				actors = n;
 			}
-			
-			for(int i = 0; i < n; i++)
-				room.update(sense.actor(i), sense.getCoM(i));
-		}
-		if (debugLevel > 0)
+		});
+		scheduler.add("timers", scheduler.timers());
+		scheduler.add("media", new Scheduler.Stage() {
+			public void run( long now ) {
+				room.dispatch();
+			}
+		});
+		if (debugLevel > 1)
+			scheduler.every(REPORT_MS, new Runnable() {
+				public void run() {
+					scheduler.report();
+				}
+			});
+		
+		scheduler.run();
+		room.batch(false);
+		sense.stop();
+		if (debugLevel > 0) {
 			System.out.println("Finish detected, exiting");
+			scheduler.report();
+			sense.report();
+			policy.report();
+			room.report();
+		}
+		room.shutdown();
 		System.exit(0);
 	}
+	
+	/**
+	 * test loop: walk actors through the regions, one step per tick
+	 * 
+	 * @param passes	number of test passes
+	 * @param delay		ms per step
+	 */
+	public void test( final int passes, int delay ) {
+		scheduler = new Scheduler(delay * 1000000L);
+		room.batch(true);
+		scheduler.add("test", new Scheduler.Stage() {
+			public void run( long now ) {
+				if (!room.test(passes))
+					scheduler.stop();
+			}
+		});
+		scheduler.add("timers", scheduler.timers());
+		scheduler.add("media", new Scheduler.Stage() {
+			public void run( long now ) {
+				room.dispatch();
+			}
+		});
+		scheduler.run();
+		room.batch(false);
+		if (debugLevel > 0)
+			scheduler.report();
+	}
 
 	/**
 	 * print out a usage message
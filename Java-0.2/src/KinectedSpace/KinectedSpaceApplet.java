@@ -12,11 +12,14 @@ import java.awt.Dimension;
  */
 public class KinectedSpaceApplet extends Applet implements Runnable {
 	
-	private UserSensor sense;	// reference to KinectSensor Instance
+	private SensorSource sense;	// where actor positions come from
+	private FramePolicy policy;	// what to do when we fall behind
 	private KinectedSpace room;	// reference to KinectedSpace instance
 	private boolean running;	// to control the updater thread
 	private int testPasses;		// is this just a test run?
 	private int debugLevel;		// how much debug output we want
+	private String source;		// sensor source specification
+	private boolean decimate;	// skip stationary actors when behind
 
 	private static final String REGIONFILE = "Regions.xml";
 	private static final String RULEFILE = "Rules.xml";
@@ -57,6 +60,21 @@ public class KinectedSpaceApplet extends Applet implements Runnable {
 		room.prefix(prefix);
 		room.readRegions(regionFile);
 		room.readRules(ruleFile);
+		s = getParameter("channels");		// e.g. "north:1024,0 south:2048,0"
+		if (s != null) {
+			String specs[] = s.trim().split("\\s+");
+			for( int i = 0; i < specs.length; i++ )
+				room.addChannel(specs[i]);
+		}
+		String packFile = getParameter("pack");
+		if (packFile != null)
+			room.pack(packFile);
+		s = getParameter("mixer");
+		if (s != null && Boolean.parseBoolean(s))
+			room.mixer();
+		source = getParameter("source");	// e.g. "synthetic:8,30"
+		s = getParameter("decimate");
+		decimate = s != null && Boolean.parseBoolean(s);
 	}
 	
 	/**
@@ -72,8 +90,10 @@ public class KinectedSpaceApplet extends Applet implements Runnable {
 				}
 			}
 		} else {
-			sense = new UserSensor();
-			sense.debug(debugLevel);
+			sense = room.source(source);
+			if (sense == null)
+				return;
+			policy = new FramePolicy(sense.fps(), decimate);
 			
 			room.start();
 			
@@ -85,52 +105,26 @@ public class KinectedSpaceApplet extends Applet implements Runnable {
 	
 	/**
 	 * main loop
-	 * 	 update the sensor
-	 * 	 check for new and dropped actors
-	 * 	 for each user
-	 * 		get his position, and pass it to the room
+	 * 	 get the next (newest) frame from the sensor
+	 * 	 pass it to the room (perhaps less stationary actors)
 	 */
 	public void run() {
-		int minActor = -1;
-		int maxActor = -1;
-		int actors = 0;
-		
+		SensorFrame frame = new SensorFrame();
 		while(running && !room.finished) {
-			sense.update();
-			int n = sense.numUsers();
-			int lowest = 99999;
-			
-			// look for added or lost actors
-			if (n != actors) {
-				for(int i = 0; i < n; i++) {
-					// see if any new actors have been added
-					int a = sense.actor(i);
-					if (a > maxActor) {
-						room.addActor(a);
-						maxActor = a;
-					} else if (a < lowest)
-						lowest = a;
-				}
-				
-				// see if we lost any actors
-				if (lowest != 99999) {
-					if (minActor == -1)
-						minActor = lowest;
-					while(lowest > minActor) {
-						room.dropActor(minActor++);
-					}
-				}
-		
-				actors = n;
-			}
-			
-			// now update all of their positions
-			for(int i = 0; i < n; i++)
-				room.update(sense.actor(i), sense.getCoM(i));
+			if (!sense.next(frame))
+				break;		// end of recording
+			policy.start(frame);
+			room.process(frame, sense.events());
+			policy.done();
 		}
+		sense.stop();
 		
-		if (debugLevel > 0)
+		if (debugLevel > 0) {
 			System.out.println("finish detected, return from run");
+			sense.report();
+			policy.report();
+			room.report();
+		}
 	}
 	
 	/**
@@ -138,5 +132,6 @@ public class KinectedSpaceApplet extends Applet implements Runnable {
 	 */
 	public void destroy() {
 		running = false;
+		room.shutdown();
 	}
 }
@@ -0,0 +1,248 @@
+package KinectedSpace;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+/**
+ * A MediaPack is a memory-mapped archive of pre-decoded media
+ *
+ *   It is created (by MediaPacker) from all of the media files referenced
+ *   by a set of rules, and contains raw pixels (at display resolution),
+ *   PCM samples and UTF-8 text.  Nothing has to be decoded at run time:
+ *   images and sounds are built directly from the mapped file.  Each
+ *   entry is mapped on its own (at a long offset), so the archive as a
+ *   whole can be larger than 2GB, though no one entry can.
+ *
+ *   format (all big-endian):
+ *		header:	magic, version, width, height, #entries
+ *		index:	per entry: name (modified UTF-8), type, offset, length,
+ *				image: width, height
+ *				sound: rate, bits, channels, signed, big-endian
+ *		data:	image: width*height RGB ints
+ *				sound: PCM frames
+ *				text:  UTF-8 bytes
+ */
+public class MediaPack {
+
+	public static final int MAGIC = 0x4b53504b;	// "KSPK"
+	public static final int VERSION = 1;
+
+	public static final byte IMAGE = 1;
+	public static final byte SOUND = 2;
+	public static final byte TEXT = 3;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private Map<String, Entry> index;	// the entries in it
+	private int width, height;			// display size it was packed for
+
+	/**
+	 * index entry for a single media file
+	 */
+	static class Entry {
+		byte type;			// IMAGE, SOUND or TEXT
+		long offset;		// start of data in archive
+		long length;		// length of data (bytes)
+		int width, height;	// image dimensions
+		AudioFormat format;	// sound format
+		MappedByteBuffer map;	// the (mapped) data
+	}
+
+	/**
+	 * map an archive and read its index
+	 *
+	 * @param file	archive to be opened
+	 * @throws IOException
+	 */
+	public MediaPack( File file ) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			DataInputStream b = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(raf.getFD()), 64 * 1024));
+			if (b.readInt() != MAGIC)
+				throw new IOException(file + ": not a media pack");
+			if (b.readInt() != VERSION)
+				throw new IOException(file + ": unsupported media pack version");
+			width = b.readInt();
+			height = b.readInt();
+			int n = b.readInt();
+
+			FileChannel ch = raf.getChannel();
+			long size = ch.size();
+			index = new HashMap<String, Entry>(n * 2);
+			for( int i = 0; i < n; i++ ) {
+				String name = b.readUTF();
+				Entry e = new Entry();
+				e.type = b.readByte();
+				e.offset = b.readLong();
+				e.length = b.readLong();
+				if (e.type == IMAGE) {
+					e.width = b.readInt();
+					e.height = b.readInt();
+				} else if (e.type == SOUND) {
+					float rate = b.readFloat();
+					int bits = b.readInt();
+					int channels = b.readInt();
+					boolean signed = b.readByte() != 0;
+					boolean bigEndian = b.readByte() != 0;
+					e.format = new AudioFormat(rate, bits, channels, signed, bigEndian);
+				}
+				if (e.length > Integer.MAX_VALUE)
+					throw new IOException(file + ": " + name + " is too large (over 2GB) to be mapped");
+				if (e.offset < 0 || e.offset + e.length > size)
+					throw new IOException(file + ": " + name + " is past the end of the archive (truncated?)");
+				e.map = ch.map(FileChannel.MapMode.READ_ONLY, e.offset, e.length);
+				index.put(name, e);
+			}
+		} catch (EOFException e) {
+			throw new IOException(file + ": truncated media pack index");
+		} finally {
+			raf.close();		// the mappings outlive the file handle
+		}
+	}
+
+	/**
+	 * @return the (display) width this archive was packed for
+	 */
+	public int width() {
+		return width;
+	}
+
+	/**
+	 * @return the (display) height this archive was packed for
+	 */
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * @return whether or not this archive contains a particular media file
+	 */
+	public boolean contains( String name, byte type ) {
+		Entry e = index.get(name);
+		return e != null && e.type == type;
+	}
+
+	/**
+	 * @return the size (in bytes) of a particular media file (or -1)
+	 */
+	public long size( String name ) {
+		Entry e = index.get(name);
+		return (e == null) ? -1 : e.length;
+	}
+
+	/**
+	 * @return a read-only view of the data for a particular entry
+	 */
+	private ByteBuffer data( Entry e ) {
+		return e.map.duplicate();
+	}
+
+	/**
+	 * create an image from the packed pixels
+	 *
+	 * @param name	name of the original image file
+	 * @return		image (or null if it is not in the archive)
+	 */
+	public BufferedImage image( String name ) {
+		Entry e = index.get(name);
+		if (e == null || e.type != IMAGE)
+			return null;
+
+		BufferedImage img = new BufferedImage(e.width, e.height, BufferedImage.TYPE_INT_RGB);
+		int pixels[] = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+		IntBuffer src = data(e).asIntBuffer();
+		src.get(pixels, 0, e.width * e.height);
+		return img;
+	}
+
+	/**
+	 * create an audio stream from the packed samples
+	 *
+	 * @param name	name of the original sound file
+	 * @return		PCM audio stream (or null if it is not in the archive)
+	 */
+	public AudioInputStream sound( String name ) {
+		Entry e = index.get(name);
+		if (e == null || e.type != SOUND)
+			return null;
+		long frames = e.length / e.format.getFrameSize();
+		return new AudioInputStream(new BufferStream(data(e)), e.format, frames);
+	}
+
+	/**
+	 * @param name	name of the original text file
+	 * @return		contents of that file (or null if it is not in the archive)
+	 */
+	public String text( String name ) {
+		Entry e = index.get(name);
+		if (e == null || e.type != TEXT)
+			return null;
+		return UTF8.decode(data(e)).toString();
+	}
+
+	/**
+	 * an InputStream that reads from a (mapped) ByteBuffer
+	 */
+	private static class BufferStream extends InputStream {
+		private ByteBuffer buf;
+		private int mark;
+
+		BufferStream( ByteBuffer b ) {
+			buf = b;
+			mark = 0;
+		}
+
+		public int read() {
+			return buf.hasRemaining() ? (buf.get() & 0xff) : -1;
+		}
+
+		public int read( byte b[], int off, int len ) {
+			if (!buf.hasRemaining())
+				return -1;
+			len = Math.min(len, buf.remaining());
+			buf.get(b, off, len);
+			return len;
+		}
+
+		public long skip( long n ) {
+			int len = (int) Math.min(n, buf.remaining());
+			buf.position(buf.position() + len);
+			return len;
+		}
+
+		public int available() {
+			return buf.remaining();
+		}
+
+		public boolean markSupported() {
+			return true;
+		}
+
+		public void mark( int limit ) {
+			mark = buf.position();
+		}
+
+		public void reset() {
+			buf.position(mark);
+		}
+	}
+}
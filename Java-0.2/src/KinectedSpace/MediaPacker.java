@@ -0,0 +1,318 @@
+package KinectedSpace;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import ActiveSpace.RegionEvent;
+import ActiveSpace.Space;
+
+/**
+ * main class for the (offline) media packer
+ * 		process command line arguments
+ * 		read the regions and rules
+ * 		decode every referenced media file into a MediaPack
+ *
+ * 	The prefix (and window size) should be the same as will
+ * 	be used by KinectedSpace, since media files are looked up
+ * 	by their (prefixed) names.
+ */
+public class MediaPacker {
+
+	private Map<String, Byte> media;	// media files to be packed
+	private ImageLoader loader;			// image decoder
+	private TextOverlay texts;			// text file reader
+	private int width, height;			// display size
+	private int debugLevel;				// level of diagnostics
+
+	private static String usage[] = {
+		"MediaPacker [switches] [regions-file] [rules-file]",
+		"    switches:",
+		"        --regions=regions-file",
+		"        --rules=rules-file",
+		"        --base=prefix",
+		"        --height=#",
+		"        --width=#",
+		"        --pack=output-file",
+		"        --debug=#"
+	};
+
+	private static final String REGIONFILE = "bin/Regions.xml";
+	private static final String RULEFILE = "bin/Rules.xml";
+	private static final String PREFIX = "bin";
+	private static final String PACKFILE = "media.pack";
+	private static final int HEIGHT = 768;
+	private static final int WIDTH = 1024;
+
+	public static void main(String args[]) {
+		String regionFile = null;
+		String ruleFile = null;
+		String prefix = null;
+		String packFile = null;
+		int height = HEIGHT;
+		int width = WIDTH;
+		int debug = 1;
+
+		// process the command line arguments (why isn't there a standard for this?)
+		for( int i = 0; i < args.length; i++ ) {
+			if (args[i].contains("regions=")) {
+				regionFile = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("rules=")) {
+				ruleFile = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("base=")) {
+				prefix = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("pack=")) {
+				packFile = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("height=")) {
+				height = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+			} else if (args[i].contains("width=")) {
+				width = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+			} else if (args[i].contains("debug=")) {
+				debug = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+			} else if (args[i].contains("help") || args[i].contains("?")) {
+				usage();
+				return;
+			} else if (regionFile == null) {
+				regionFile = args[i];
+			} else if (ruleFile == null) {
+				ruleFile = args[i];
+			} else {
+				usage();
+				return;
+			}
+		}
+
+		// use default file locations if none are specified
+		if (ruleFile == null)
+			ruleFile = RULEFILE;
+		if (regionFile == null)
+			regionFile = REGIONFILE;
+		if (prefix == null)
+			prefix = PREFIX;
+		if (packFile == null)
+			packFile = PACKFILE;
+
+		// find all of the media referenced by the rules
+		Space s = new Space();
+		s.debug(debug);
+		try {
+			s.readRegions(regionFile, true);
+			s.prefix(prefix);
+			s.readRules(ruleFile);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+
+		MediaPacker packer = new MediaPacker(width, height, debug);
+		Iterator<RegionEvent> it = s.events().iterator();
+		while(it.hasNext()) {
+			RegionEvent r = it.next();
+			packer.add(r.getImage(), MediaPack.IMAGE);
+			packer.add(r.getSound(), MediaPack.SOUND);
+			packer.add(r.getText(), MediaPack.TEXT);
+		}
+
+		try {
+			packer.write(new File(packFile));
+		} catch (IOException e) {
+			System.out.println("Error writing media pack: " + packFile);
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	public MediaPacker( int width, int height, int debug ) {
+		this.width = width;
+		this.height = height;
+		this.debugLevel = debug;
+		media = new LinkedHashMap<String, Byte>();
+		loader = new ImageLoader(null);
+		texts = new TextOverlay();
+	}
+
+	/**
+	 * add a media file to the list to be packed
+	 *
+	 * @param name	name of media file (or null/cancel)
+	 * @param type	type of media
+	 */
+	public void add( String name, byte type ) {
+		if (name == null || name.equals("cancel"))
+			return;
+		media.put(name, type);
+	}
+
+	/**
+	 * decode all of the media files and write out the archive
+	 *
+	 *	The data is written first (after space reserved for the
+	 *	header and index) and then the index is filled in.  Each
+	 *	file is written as soon as it is decoded, so only one is
+	 *	held in memory at a time.
+	 *
+	 * @param out	archive to be created
+	 * @throws IOException
+	 */
+	public void write( File out ) throws IOException {
+		String names[] = media.keySet().toArray(new String[0]);
+		ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+		DataOutputStream index = new DataOutputStream(indexBytes);
+		long offsets[] = new long[names.length];
+		long lengths[] = new long[names.length];
+		boolean packed[] = new boolean[names.length];
+		int dims[][] = new int[names.length][2];
+		AudioFormat formats[] = new AudioFormat[names.length];
+
+		RandomAccessFile raf = new RandomAccessFile(out, "rw");
+		raf.setLength(0);
+		int count = 0;
+		try {
+			// reserve space for the header and an index of everything
+			// (entries are fixed length, and anything we can't read leaves a gap)
+			Arrays.fill(packed, true);
+			writeIndex(index, names, packed, dims, formats, offsets, lengths);
+			long dataStart = 20 + indexBytes.size();
+			raf.seek(dataStart);
+
+			// decode and append each media file (dropping anything we can't read)
+			DataOutputStream data = new DataOutputStream(
+					new FileOutputStream(raf.getFD()));
+			for( int i = 0; i < names.length; i++ ) {
+				File f = new File(names[i]);
+				byte type = media.get(names[i]);
+				offsets[i] = raf.getFilePointer();
+				packed[i] = false;
+				try {
+					if (type == MediaPack.IMAGE) {
+						BufferedImage img = toRGB(loader.load(f, width, height));
+						int pixels[] = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+						byte row[] = new byte[pixels.length * 4];
+						for( int p = 0, b = 0; p < pixels.length; p++ ) {
+							row[b++] = (byte) (pixels[p] >> 24);
+							row[b++] = (byte) (pixels[p] >> 16);
+							row[b++] = (byte) (pixels[p] >> 8);
+							row[b++] = (byte) pixels[p];
+						}
+						data.write(row);
+						dims[i][0] = img.getWidth();
+						dims[i][1] = img.getHeight();
+					} else if (type == MediaPack.SOUND) {
+						AudioInputStream in = SoundStreamer.pcm(AudioSystem.getAudioInputStream(f));
+						try {
+							copy(in, data);
+						} finally {
+							in.close();
+						}
+						formats[i] = in.getFormat();
+					} else {
+						data.write(texts.read(f).getBytes("UTF-8"));
+					}
+					data.flush();
+				} catch (Exception e) {
+					System.out.println("Unable to pack " + names[i] + ": " + e.getMessage());
+					data.flush();
+					raf.seek(offsets[i]);	// drop whatever we got of it
+					continue;
+				}
+				lengths[i] = raf.getFilePointer() - offsets[i];
+				if (lengths[i] > Integer.MAX_VALUE) {
+					System.out.println("Unable to pack " + names[i] + ": larger than 2GB");
+					raf.seek(offsets[i]);
+					continue;
+				}
+				packed[i] = true;
+				count++;
+				if (debugLevel > 1)
+					System.out.println("    packed " + names[i] + " (" + lengths[i] + " bytes)");
+			}
+			raf.setLength(raf.getFilePointer());	// (in case the last one was dropped)
+
+			// now go back and write the real header and index
+			indexBytes.reset();
+			writeIndex(index, names, packed, dims, formats, offsets, lengths);
+			raf.seek(0);
+			raf.writeInt(MediaPack.MAGIC);
+			raf.writeInt(MediaPack.VERSION);
+			raf.writeInt(width);
+			raf.writeInt(height);
+			raf.writeInt(count);
+			raf.write(indexBytes.toByteArray());
+		} finally {
+			raf.close();
+		}
+
+		if (debugLevel > 0)
+			System.out.println("Packed " + count + " media files into " + out);
+	}
+
+	/**
+	 * (re)generate the index
+	 * 		the first pass (before we know the offsets and formats) is only
+	 * 		to get the length, so every entry must be fixed length
+	 */
+	private void writeIndex( DataOutputStream index, String names[], boolean packed[],
+			int dims[][], AudioFormat formats[], long offsets[], long lengths[]) throws IOException {
+		for( int i = 0; i < names.length; i++ ) {
+			if (!packed[i])
+				continue;
+			byte type = media.get(names[i]);
+			index.writeUTF(names[i]);
+			index.writeByte(type);
+			index.writeLong(offsets[i]);
+			index.writeLong(lengths[i]);
+			if (type == MediaPack.IMAGE) {
+				index.writeInt(dims[i][0]);
+				index.writeInt(dims[i][1]);
+			} else if (type == MediaPack.SOUND) {
+				AudioFormat f = formats[i];
+				index.writeFloat(f == null ? 0 : f.getSampleRate());
+				index.writeInt(f == null ? 0 : f.getSampleSizeInBits());
+				index.writeInt(f == null ? 0 : f.getChannels());
+				index.writeByte(f != null && f.getEncoding() == AudioFormat.Encoding.PCM_SIGNED ? 1 : 0);
+				index.writeByte(f != null && f.isBigEndian() ? 1 : 0);
+			}
+		}
+		index.flush();
+	}
+
+	/**
+	 * @return the image as TYPE_INT_RGB (converting it if necessary)
+	 */
+	private BufferedImage toRGB( BufferedImage img ) {
+		if (img.getType() == BufferedImage.TYPE_INT_RGB)
+			return img;
+		BufferedImage rgb = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB);
+		rgb.getGraphics().drawImage(img, 0, 0, null);
+		return rgb;
+	}
+
+	private static void copy( InputStream in, DataOutputStream out ) throws IOException {
+		byte buf[] = new byte[64 * 1024];
+		int n;
+		while ((n = in.read(buf)) > 0)
+			out.write(buf, 0, n);
+	}
+
+	/**
+	 * print out a usage message
+	 */
+	private static void usage() {
+		for( int i = 0; i < usage.length; i++ )
+			System.out.println(usage[i]);
+	}
+}
@@ -0,0 +1,113 @@
+package KinectedSpace;
+
+import java.io.File;
+
+/**
+ * An OpenNISource is a SensorSource backed by a Kinect (via UserSensor)
+ *
+ *   If the sensor stops responding, ThreadedSource's watchdog restarts
+ *   it: the old OpenNI context is released and a new one created, and
+ *   the users it re-detects are matched up with the actors we lost
+ *   (see ActorRebinder).
+ */
+public class OpenNISource implements SensorSource, Recoverable {
+
+	public static final int FPS = 30;	// Kinect frame rate
+
+	private UserSensor sense;	// the real sensor
+	private float xyz[];		// user positions (real-world mm)
+	private boolean valid[];	// which positions are known
+	private ActorRebinder rebinder;	// actor numbering across restarts
+	private SensorFrame last;	// the last frame we delivered
+	private int restarts;		// number of sensor restarts
+	private int debugLevel;
+
+	/**
+	 * @param depthFile	where to record depth frames (or null)
+	 */
+	public OpenNISource( File depthFile ) {
+		sense = new UserSensor();
+		if (depthFile != null)
+			sense.record(depthFile);
+		xyz = new float[3 * SensorFrame.MAX_ACTORS];
+		valid = new boolean[SensorFrame.MAX_ACTORS];
+		rebinder = new ActorRebinder();
+		last = new SensorFrame();
+	}
+
+	public boolean next( SensorFrame f ) {
+		UserSensor s = sense;
+		while (!s.update()) {
+			// don't deliver a stale set of users ... wait for a good read
+			if (s != sense || !s.running())
+				return false;
+			try {
+				Thread.sleep(1000 / FPS);
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+
+		synchronized(this) {
+			if (s != sense || !s.running())
+				return false;	// this sensor was replaced (or released) while we waited
+			f.clear(System.nanoTime());
+			int n = s.getCoMs(xyz, valid);
+			for( int i = 0; i < n; i++ )
+				f.add(s.actor(i), valid[i], xyz[3*i], xyz[3*i+1], xyz[3*i+2]);
+			rebinder.translate(s.events(), f);
+			last.copy(f);
+		}
+		return true;
+	}
+
+	public boolean restart() {
+		UserSensor s = new UserSensor();
+		if (!s.running()) {
+			// perhaps the hung one still holds the device ... let it go and try again
+			s.release();
+			synchronized(this) {
+				sense.release();
+			}
+			s = new UserSensor();
+			if (!s.running()) {
+				s.release();
+				return false;
+			}
+		}
+		s.debug(debugLevel);
+		synchronized(this) {
+			UserSensor old = sense;
+			s.adopt(old);
+			sense = s;
+			old.release();		// (which may also free a hung read)
+			rebinder.restarted(last, System.nanoTime());
+			restarts++;
+		}
+		return true;
+	}
+
+	public ActorEvents events() {
+		return rebinder.events();
+	}
+
+	public int fps() {
+		return FPS;
+	}
+
+	public void stop() {
+		// OpenNI releases the context when we exit
+		sense.stopRecording();
+	}
+
+	public void report() {
+		if (restarts > 0)
+			System.out.println("Kinect: " + restarts + " restarts, " + rebinder.kept() +
+					" actors kept, " + rebinder.lost() + " lost");
+	}
+
+	public void debug( int level ) {
+		debugLevel = level;
+		sense.debug(level);
+	}
+}
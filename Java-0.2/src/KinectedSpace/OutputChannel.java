@@ -0,0 +1,676 @@
+package KinectedSpace;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.WindowEvent;
+import java.awt.event.WindowListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.DataLine;
+import javax.swing.JWindow;
+
+import ActiveSpace.Coord;
+import ActiveSpace.MediaActions;
+
+/**
+ * An OutputChannel is one (named) display window and its media players
+ *
+ *   Media actions are not carried out on the caller's (sensor) thread.
+ *   They are queued, in order, to this channel's own dispatch thread,
+ *   and images are composed by this channel's own render thread.  A
+ *   slow image load on one channel thus delays neither the sensor
+ *   loop nor any of the other channels.
+ */
+public class OutputChannel extends JWindow
+	implements MediaActions, WindowListener, MouseListener {
+
+	private String name;		// name by which rules address us
+	private KinectedSpace owner;	// space that feeds us
+	private Dimension size;		// window size
+	private ImageLoader loader;	// decodes images to display size/format
+	private MediaPack pack;		// pre-decoded media (if any)
+	private ImageRenderer renderer;	// composes the displayed image
+	private SequencePlayer sequencer;	// decodes animated image sequences
+	private Clip clip;			// active audio clip
+	private SoundStreamer stream;	// active streamed sound
+	private AudioMixer mixer;	// (shared) spatial sound mixer (if any)
+	private TextOverlay texts;	// text file/layout cache
+	private Map<String, File> found;	// media files known to exist (by name)
+	private volatile Image overText;	// rendered text to put on top of image
+	private Color textColor;	// color in which to render that text
+
+	private BlockingQueue<Runnable> queue;	// pending media actions
+	private Thread dispatcher;	// carries them out
+	private int maxDepth;		// deepest the queue has been
+	private boolean batching;	// hold actions until flush
+	private List<Runnable> held;	// actions being held
+
+	private	int debugLevel;		// how noisy we want to be
+
+	private static final long STREAM_SIZE = 1024 * 1024;	// stream (vs Clip) larger sounds
+	private static final int FRAME_RATE = 30;	// image render clock (frames/sec)
+
+	// display text rendering
+	private static final int	DISPLAY_FONT_SIZE = 16;
+	private static final String	DISPLAY_FONT_STYLE = "BOLD";
+	private static final Color	DISPLAY_FONT_COLOR = Color.white;
+
+	private static final long serialVersionUID = 1L;	// LAME
+
+	/**
+	 * create a display window and its render and dispatch threads
+	 *
+	 * @param name		name by which rules address this channel
+	 * @param size		window size
+	 * @param where		window location (or null)
+	 * @param owner		space whose rules feed this channel
+	 */
+	public OutputChannel( String name, Dimension size, Point where, KinectedSpace owner ) {
+		this.name = name;
+		this.size = size;
+		this.owner = owner;
+		clip = null;			// we are not playing any sounds
+		stream = null;			// we are not streaming any sounds
+		overText = null;		// we do not have any overlay text
+		texts = new TextOverlay();
+		found = new HashMap<String, File>();
+		pack = null;			// we have no pre-decoded media
+		mixer = null;			// we play sounds with Clips
+		debugLevel = 0;
+
+		// create a display window
+		this.setPreferredSize( size );
+		if (where != null)
+			this.setLocation( where );
+		this.pack();
+		this.setVisible(true);
+		loader = new ImageLoader(getGraphicsConfiguration());
+		renderer = new ImageRenderer(this, loader, size.width, size.height, FRAME_RATE);
+		sequencer = new SequencePlayer(loader, size.width, size.height);
+		renderer.animate(sequencer);
+		renderer.start();
+
+		// choose our text display font, size, color
+		setFontSize(DISPLAY_FONT_SIZE);
+		setFontStyle(DISPLAY_FONT_STYLE);
+		setFontColor(DISPLAY_FONT_COLOR);
+
+		// capture window and mouse events
+		addWindowListener(this);
+		addMouseListener(this);
+
+		// start the thread that carries out our media actions
+		queue = new LinkedBlockingQueue<Runnable>();
+		maxDepth = 0;
+		batching = false;
+		held = new ArrayList<Runnable>();
+		dispatcher = new Thread(new Runnable() {
+			public void run() { dispatch(); }
+		}, "OutputChannel-" + name);
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**
+	 * @return the name of this channel
+	 */
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * set the debug level for this channel
+	 * @param level
+	 */
+	public void debug( int level ) {
+		debugLevel = level;
+		sequencer.debug(level);
+	}
+
+	/**
+	 * use pre-decoded media from a (shared) media pack
+	 *
+	 * @param p	media pack (or null)
+	 */
+	public void pack( MediaPack p ) {
+		pack = p;
+	}
+
+	/**
+	 * play (short) sounds through a (shared) spatial mixer
+	 *
+	 * @param m	audio mixer (or null)
+	 */
+	public void mixer( AudioMixer m ) {
+		mixer = m;
+	}
+
+	/**
+	 * @return number of media actions waiting to be carried out
+	 */
+	public int queueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * @return largest number of media actions that have been waiting
+	 */
+	public int maxQueueDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * hold media actions (on the caller's thread) until flushed, so
+	 * that everything the rules decide in one tick is handed to our
+	 * dispatch thread at once (see Scheduler)
+	 */
+	public void batch( boolean hold ) {
+		batching = hold;
+		if (!hold)
+			flush();
+	}
+
+	/**
+	 * pass any held media actions to our dispatch thread
+	 */
+	public void flush() {
+		if (held.isEmpty())
+			return;
+		queue.addAll(held);
+		held.clear();
+		noteDepth();
+	}
+
+	/**
+	 * queue a media action for our dispatch thread
+	 */
+	private void post( Runnable action ) {
+		if (batching) {
+			held.add(action);
+			return;
+		}
+		queue.add(action);
+		noteDepth();
+	}
+
+	private void noteDepth() {
+		int depth = queue.size();
+		if (depth > maxDepth) {
+			maxDepth = depth;
+			if (debugLevel > 0 && depth > 1)
+				System.out.println("Channel " + name + ": " + depth + " actions queued");
+		}
+	}
+
+	/**
+	 * dispatch thread: carry out queued media actions (in order)
+	 */
+	private void dispatch() {
+		while (true) {
+			try {
+				queue.take().run();
+			} catch (InterruptedException e) {
+				return;
+			} catch (Exception e) {
+				System.out.println("Channel " + name + ": media action failed");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * stop our threads and close the window
+	 */
+	public void shutdown() {
+		dispatcher.interrupt();
+		renderer.stop();
+		sequencer.shutdown();
+		stopSound();
+		dispose();
+	}
+
+	/**
+	 * rules address other channels through the space that feeds us
+	 */
+	public MediaActions channel( String channelName ) {
+		return owner.channel(channelName);
+	}
+
+	public void displayImage( String filename ) {
+		displayImage(filename, Transition.CUT, 0);
+	}
+
+	public void displayImage( final String filename, final Transition t, final int msecs ) {
+		post(new Runnable() {
+			public void run() { showImage(filename, t, msecs); }
+		});
+	}
+
+	public void blankImage() {
+		blankImage(Transition.CUT, 0);
+	}
+
+	public void blankImage( final Transition t, final int msecs ) {
+		post(new Runnable() {
+			public void run() { showBlank(t, msecs); }
+		});
+	}
+
+	public void playSequence( final String dirname, final int fps, final boolean loop ) {
+		post(new Runnable() {
+			public void run() { startSequence(dirname, fps, loop); }
+		});
+	}
+
+	public void stopSequence() {
+		post(new Runnable() {
+			public void run() {
+				if (debugLevel > 1)
+					System.out.println("   ... stop image sequence");
+				sequencer.stop();
+			}
+		});
+	}
+
+	public void playSound( final String filename ) {
+		post(new Runnable() {
+			public void run() { startSound(filename, false, null); }
+		});
+	}
+
+	public void playSound( final String filename, Coord where ) {
+		// the actor will have moved on by the time we get to it
+		final Coord at = (where == null) ? null : new Coord(where.x, where.y, where.z);
+		post(new Runnable() {
+			public void run() { startSound(filename, false, at); }
+		});
+	}
+
+	public void loopSound( final String filename ) {
+		post(new Runnable() {
+			public void run() { startSound(filename, true, null); }
+		});
+	}
+
+	public void silence() {
+		post(new Runnable() {
+			public void run() { stopSound(); }
+		});
+	}
+
+	public void displayText( final String filename ) {
+		post(new Runnable() {
+			public void run() { showText(filename); }
+		});
+	}
+
+	public void clearText() {
+		post(new Runnable() {
+			public void run() {
+				overText = null;
+				repaint();
+			}
+		});
+	}
+
+	/**
+	 * display an image, with a transition from the current one
+	 *
+	 * @param filename
+	 * @param t		type of transition
+	 * @param msecs	duration of transition
+	 */
+	private void showImage(String filename, Transition t, int msecs) {
+		sequencer.stop();		// a still replaces any animation
+
+		// pre-decoded images come straight out of the media pack
+		if (pack != null && pack.contains(filename, MediaPack.IMAGE)) {
+			if (debugLevel > 1)
+				System.out.println("   ... display packed image: " + filename);
+			renderer.show(loader.fit(pack.image(filename), size.width, size.height), t, msecs);
+			return;
+		}
+
+		// FIX this only works for files ... not URLs
+		File file = find(filename);
+		if (file == null) {
+			System.out.println("Unable to access input image: " + filename);
+			return;
+		}
+		if (debugLevel > 1)
+			System.out.println("   ... display image file: " + filename);
+		try {
+			// decode directly to window size, in the screen's native format
+			renderer.show(loader.load(file, size.width, size.height), t, msecs);
+		} catch (Exception e) {
+			System.out.println("Error reading image file: " + filename);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * blank the display, perhaps fading to black
+	 *
+	 * @param t		type of transition
+	 * @param msecs	duration of transition
+	 */
+	private void showBlank(Transition t, int msecs) {
+		if (debugLevel > 1)
+			System.out.println("   ... clear displayed image");
+		sequencer.stop();
+		// fading and cross-fading to black are the same thing
+		renderer.show(null, (t == Transition.FADE) ? Transition.CROSSFADE : t, msecs);
+	}
+
+	/**
+	 * animate a directory of numbered image files
+	 *
+	 * @param dirname	directory containing the frames
+	 * @param fps		frames per second
+	 * @param loop		repeat until stopped
+	 */
+	private void startSequence(String dirname, int fps, boolean loop) {
+		File dir = find(dirname);
+		if (dir == null || !dir.isDirectory() || !sequencer.play(dir, fps, loop)) {
+			System.out.println("Unable to access image sequence: " + dirname);
+			return;
+		}
+		if (debugLevel > 1)
+			System.out.println("   ... play image sequence: " + dirname + " at " + fps + "fps");
+	}
+
+	/**
+	 * repaint our window with the selected image
+	 * 	implicit parameters:
+	 * 		self.renderer	most recently composed image
+	 * 		self.overText	pre-rendered text to put on top of it
+	 */
+	public void paint( Graphics g ) {
+		// render the image (which may be blank) ... already window sized
+		renderer.paint(g);
+
+		// see if we have any text to put on top of the image
+		Image text = overText;
+		if (text != null)
+			g.drawImage(text, 0, 0, this);
+	}
+
+	/**
+	 * start playing a sound
+	 * 		short sounds are loaded into a Clip (or the mixer)
+	 * 		long sounds are streamed from the file
+	 *
+	 * @param filename
+	 * @param loop	repeat until silenced
+	 * @param where	where in the room it should come from (or null)
+	 */
+	private void startSound(String filename, boolean loop, Coord where) {
+		// short sounds can be panned and mixed with one another
+		long length = soundSize(filename);
+		if (mixer != null && length >= 0 && length <= STREAM_SIZE) {
+			if (debugLevel > 1)
+				System.out.println("   ... " + (loop ? "loop" : "play") + " mixed audio: " + filename + 
+						(where == null ? "" : " at " + where));
+			try {
+				mixer.play(mixer.load(filename, pack), mixer.pan(where), loop, this);
+			} catch (Exception e) {
+				System.out.println("Error playing sound file: " + filename);
+				e.printStackTrace();
+			}
+			return;
+		}
+
+		// pre-decoded sounds come straight out of the media pack
+		if (pack != null && pack.contains(filename, MediaPack.SOUND)) {
+			if (debugLevel > 1)
+				System.out.println("   ... " + (loop ? "loop" : "play") + " packed audio: " + filename);
+			stopPlayer();		// (one clip or stream at a time)
+			try {
+				if (pack.size(filename) > STREAM_SIZE) {
+					stream = new SoundStreamer(pack, filename, loop);
+					stream.start();
+					return;
+				}
+				startClip(pack.sound(filename), loop);
+			} catch (Exception e) {
+				System.out.println("Error playing packed sound: " + filename);
+				e.printStackTrace();
+				clip = null;
+			}
+			return;
+		}
+
+		// FIX this only works for files ... not URLs
+		File file = find(filename);
+		if (file == null) {
+			System.out.println("Unable to access sound file: " + filename);
+			clip = null;
+			return;
+		}
+		if (debugLevel > 1)
+			System.out.println("   ... " + (loop ? "loop" : "play") + " audio file: " + filename);
+		stopPlayer();		// (one clip or stream at a time)
+		try {
+			if (file.length() > STREAM_SIZE) {
+				stream = new SoundStreamer(file, loop);
+				stream.start();
+				return;
+			}
+			startClip(AudioSystem.getAudioInputStream(file), loop);
+		} catch (Exception e) {
+			System.out.println("Error playing sound file: " + filename);
+			e.printStackTrace();
+			clip = null;
+		}
+	}
+
+	/**
+	 * find a media file (or directory)
+	 * 		the file system is only asked until it is found, so
+	 * 		repeated triggers of the same media don't have to
+	 *
+	 * @param filename	(resolved) name of the file
+	 * @return			the file (or null if it does not exist)
+	 */
+	private File find(String filename) {
+		File f = found.get(filename);
+		if (f == null) {
+			f = new File(filename);
+			if (!f.exists())
+				return null;
+			found.put(filename, f);
+		}
+		return f;
+	}
+
+	/**
+	 * @return size of a (possibly packed) sound file (or -1)
+	 */
+	private long soundSize(String filename) {
+		if (pack != null && pack.contains(filename, MediaPack.SOUND))
+			return pack.size(filename);
+		File file = find(filename);
+		return (file != null) ? file.length() : -1;
+	}
+
+	/**
+	 * load a (short) sound into a Clip and start playing it
+	 *
+	 * @param in	sound to be played
+	 * @param loop	repeat until silenced
+	 */
+	private void startClip(AudioInputStream in, boolean loop) throws Exception {
+		AudioFormat format = in.getFormat();
+		DataLine.Info info = new DataLine.Info(Clip.class, format);
+		clip = (Clip) AudioSystem.getLine(info);
+		clip.open(in);
+		if (loop)
+			clip.loop(Clip.LOOP_CONTINUOUSLY);
+		else
+			clip.start();
+	}
+
+	/**
+	 * silence any playing sound
+	 */
+	private void stopSound() {
+		if (debugLevel > 1)
+			System.out.println("   ... silence");
+		stopPlayer();
+		if (mixer != null)
+			mixer.silence(this);
+	}
+
+	/**
+	 * stop (and let go of) the current clip or stream, if any
+	 * 		(a looping one would otherwise play on, out of our reach)
+	 */
+	private void stopPlayer() {
+		if (clip != null) {
+			clip.stop();
+			clip.close();
+			clip = null;
+		}
+		if (stream != null) {
+			stream.stop();
+			stream = null;
+		}
+	}
+
+	/**
+	 * display the text in the specified file
+	 * @param filename
+	 */
+	private void showText(String filename) {
+		overText = null;
+
+		// pre-decoded text comes straight out of the media pack
+		if (pack != null && pack.contains(filename, MediaPack.TEXT)) {
+			if (debugLevel > 1)
+				System.out.println("   ... display packed text: " + filename);
+			overText = texts.overlay(pack.text(filename), getFont(), textColor, size);
+			repaint();
+			return;
+		}
+
+		// FIX this only works for files ... not URLs
+		File file = find(filename);
+		if (file == null) {
+			System.out.println("Unable to access text file: " + filename);
+			return;
+		}
+		if (debugLevel > 1)
+			System.out.println("   ... display text file: " + filename);
+		try {
+			String text = texts.read(file);
+			overText = texts.overlay(text, getFont(), textColor, size);
+		} catch (Exception e) {
+			System.out.println("Error processing text file: " + filename);
+			e.printStackTrace();
+		}
+
+		// either way, we now need to refresh the display
+		repaint();
+	}
+
+	/**
+	 * set font size for displayed text
+	 * @param size	font size
+	 */
+	public void setFontSize(int newSize) {
+		// figure out what we've got
+		Font current = getFont();
+		String name = current.getName();
+		int style = current.getStyle();
+		Font newFont = new Font(name, style, newSize);
+		setFont(newFont);
+	}
+
+	/**
+	 * set font name for displayed text
+	 * @param newName	name of desired font
+	 */
+	public void setFontName(String newName) {
+		// figure out what we've got
+		Font current = getFont();
+		int style = current.getStyle();
+		int size = current.getSize();
+		Font newFont = new Font(newName, style, size);
+		setFont(newFont);
+	}
+
+	public void setFontColor(Color color) {
+		textColor = color;
+	}
+
+	/**
+	 * set font name for displayed text
+	 * @param newStile:	"plain", "bold", "italic"
+	 */
+	public void setFontStyle(String newStyle) {
+		// figure out what we've got
+		Font current = getFont();
+		String name = current.getName();
+		int size = current.getSize();
+		int style = Font.PLAIN;
+		if (newStyle.equals("BOLD") || newStyle.equals("bold"))
+			style = Font.BOLD;
+		else if (newStyle.equals("ITALIC") || newStyle.equals("italic"))
+			style = Font.ITALIC;
+		Font newFont = new Font(name, style, size);
+		setFont(newFont);
+	}
+
+
+	// repaint the window when ever it reappears
+	public void windowOpened(WindowEvent arg0) {
+		if (debugLevel > 1)
+			System.out.println("Image window " + name + " opened");
+		repaint();
+	}
+
+	public void windowActivated(WindowEvent arg0) {
+		if (debugLevel > 1)
+			System.out.println("Image window " + name + " activated");
+		repaint();
+	}
+
+	public void windowDeiconified(WindowEvent arg0) {
+		if (debugLevel > 1)
+			System.out.println("Image window " + name + " de-iconified");
+		repaint();
+	}
+
+	public void windowClosed(WindowEvent arg0) {}
+	public void windowClosing(WindowEvent arg0) {}
+	public void windowDeactivated(WindowEvent arg0) {}
+	public void windowIconified(WindowEvent arg0) {}
+
+
+	// mouse click in any display window means shutdown
+	public void mouseClicked(MouseEvent arg0) {
+		if (debugLevel > 0)
+			System.out.println("Mouse Click in display window " + name + " ... shutting down");
+		owner.finished = true;
+	}
+	public void mouseEntered(MouseEvent arg0) {}
+	public void mouseExited(MouseEvent arg0) {}
+	public void mousePressed(MouseEvent arg0) {}
+	public void mouseReleased(MouseEvent arg0) {}
+}
@@ -0,0 +1,20 @@
+package KinectedSpace;
+
+/**
+ * A Recoverable SensorSource can be torn down and started again
+ * (by ThreadedSource's watchdog) when it stops delivering frames.
+ */
+public interface Recoverable {
+
+	/**
+	 * release the (stalled) sensor and start a new one, keeping
+	 * actor identities where possible (see ActorRebinder)
+	 *
+	 * 	called on the watchdog thread: a next() still waiting on the
+	 * 	old sensor may return (false) at any time, and must not touch
+	 * 	anything the new one uses
+	 *
+	 * @return	whether or not the new sensor started
+	 */
+	boolean restart();
+}
@@ -0,0 +1,168 @@
+package KinectedSpace;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A ReplaySource is a SensorSource that plays back an ActorLog
+ * (e.g. one recorded by KinectedSpace --log)
+ *
+ *   Arrivals and departures are passed on, in the order they were logged,
+ *   with the first frame that follows them in the log.  The log
+ *   does not mark frame boundaries, so a frame is taken to be a run of
+ *   positions of different actors, ending when one of them moves again
+ *   or when an arrival or departure is read (which belongs to the next).
+ *   Frames are delivered with their recorded spacing or (realtime=false)
+ *   as fast as possible.  Any actors still present at the end of the
+ *   log leave in a final (empty) frame.
+ */
+public class ReplaySource implements SensorSource {
+
+	private ActorLog.Reader log;	// recorded arrivals, positions and departures
+	private String file;		// its name
+	private boolean realtime;	// pace frames as they were recorded
+	private boolean waiting;	// a record has been read, but not yet used
+	private long start;			// when we started replaying (ns)
+	private boolean started;	// have we delivered a frame yet
+	private long frames;		// frames delivered
+	private ActorEvents events;	// arrivals and departures
+	private int present[];		// actors who have arrived (and not left)
+	private int numPresent;		// number of them
+
+	private int debugLevel;
+
+	/**
+	 * open a recording
+	 *
+	 * @param f			actor log to be replayed
+	 * @param realtime	pace as recorded (vs as fast as possible)
+	 */
+	public ReplaySource( File f, boolean realtime ) throws IOException {
+		log = new ActorLog.Reader(f);
+		file = f.getName();
+		this.realtime = realtime;
+		started = false;
+		frames = 0;
+		debugLevel = 0;
+		events = new ActorEvents();
+		present = new int[SensorFrame.MAX_ACTORS];
+		numPresent = 0;
+		waiting = advance();
+	}
+
+	/**
+	 * read the next record
+	 *
+	 * @return	whether or not there is one (false at the end of the log)
+	 */
+	private boolean advance() {
+		try {
+			return log.next();
+		} catch (IOException e) {
+			System.out.println("Error reading " + file);
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	private void arrived( int actor ) {
+		events.add(actor);
+		if (numPresent < present.length)
+			present[numPresent++] = actor;
+	}
+
+	private void departed( int actor ) {
+		events.drop(actor);
+		for( int i = 0; i < numPresent; i++ )
+			if (present[i] == actor) {
+				present[i] = present[--numPresent];
+				break;
+			}
+	}
+
+	public boolean next( SensorFrame f ) {
+		// pass on the arrivals and departures that come before this frame
+		boolean any = false;
+		while (waiting && log.type != ActorLog.MOVE) {
+			if (log.type == ActorLog.ADD)
+				arrived(log.actor);
+			else
+				departed(log.actor);
+			any = true;
+			waiting = advance();
+		}
+
+		if (!waiting) {
+			// see off anyone who is still here (in a final, empty, frame)
+			while (numPresent > 0) {
+				departed(present[numPresent - 1]);
+				any = true;
+			}
+			if (!any)
+				return false;
+			f.clear(System.nanoTime());
+			frames++;
+			return true;
+		}
+
+		// wait until it is time for this frame
+		long now = System.nanoTime();
+		if (!started) {
+			start = now - log.when;
+			started = true;
+		} else if (realtime) {
+			long due = start + log.when;
+			if (due > now) {
+				try {
+					Thread.sleep((due - now) / 1000000, (int) ((due - now) % 1000000));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+				now = System.nanoTime();
+			}
+		}
+
+		// gather up positions until someone moves again (or comes or goes)
+		long ms = log.when / 1000000;
+		f.clear(now);
+		while (waiting && log.type == ActorLog.MOVE && !contains(f, log.actor)) {
+			f.add(log.actor, true, log.x, log.y, log.z);
+			waiting = advance();
+		}
+		frames++;
+		if (debugLevel > 2)
+			System.out.println("   replay frame " + ms + "ms: " + f.count + " actors");
+		return true;
+	}
+
+	/**
+	 * @return whether or not an actor is already in a frame
+	 */
+	private static boolean contains( SensorFrame f, int actor ) {
+		for( int i = 0; i < f.count; i++ )
+			if (f.actor[i] == actor)
+				return true;
+		return false;
+	}
+
+	public ActorEvents events() {
+		return events;
+	}
+
+	public int fps() {
+		return 0;		// whatever was recorded
+	}
+
+	public void stop() {
+		log.close();
+	}
+
+	public void report() {
+		System.out.println("Replay: " + file + ", " + frames + " frames");
+	}
+
+	public void debug( int level ) {
+		debugLevel = level;
+	}
+}
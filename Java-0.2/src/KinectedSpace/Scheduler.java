@@ -0,0 +1,207 @@
+package KinectedSpace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A Scheduler runs the main loop as a sequence of fixed-length ticks
+ *
+ *   Each tick runs the same stages (e.g. acquisition, tracking, region
+ *   evaluation, timers, media dispatch) in order, and the time each one
+ *   takes is recorded, so the latency of each can be seen and tuned.
+ *   Ticks are scheduled against the monotonic clock (System.nanoTime)
+ *   at multiples of the period from the start, so they do not drift.
+ *   A tick that overruns the period pushes the following ones back to
+ *   the next boundary (missed ticks are skipped and counted, not run
+ *   in a burst to catch up).  A period of zero runs the ticks back to
+ *   back (e.g. when a stage is itself paced by a sensor, or as fast
+ *   as possible for a benchmark).
+ *
+ *   Timers (after, every) are run, on the tick thread, by the timers
+ *   stage, in the first tick at or after they are due.
+ */
+public class Scheduler {
+
+	/**
+	 * one step of every tick
+	 */
+	public interface Stage {
+		/**
+		 * @param now	time the tick started (System.nanoTime)
+		 */
+		void run( long now );
+	}
+
+	private long period;		// tick length (ns, 0 = free-running)
+	private volatile boolean running;	// keep on ticking
+
+	private List<String> names;	// stage names
+	private List<Stage> stages;	// the stages, in order
+	private long busy[];		// total time per stage (ns)
+	private long worst[];		// longest time per stage (ns)
+
+	// timers
+	private List<Runnable> actions;	// what to do
+	private List<Long> due;			// when to do it
+	private List<Long> repeat;		// how often (0 = once)
+
+	// statistics
+	private long ticks;			// ticks run
+	private long skipped;		// ticks missed because of overruns
+	private long totalLate;		// sum of wake-up lateness (ns)
+	private long maxLate;		// worst wake-up lateness (ns)
+
+	/**
+	 * @param period	tick length (ns, 0 = free-running)
+	 */
+	public Scheduler( long period ) {
+		this.period = period;
+		names = new ArrayList<String>();
+		stages = new ArrayList<Stage>();
+		busy = new long[0];
+		worst = new long[0];
+		actions = new ArrayList<Runnable>();
+		due = new ArrayList<Long>();
+		repeat = new ArrayList<Long>();
+	}
+
+	/**
+	 * add a stage (to be run, in each tick, after those already added)
+	 *
+	 * @param name	what to call it in reports
+	 * @param s		the stage
+	 */
+	public void add( String name, Stage s ) {
+		names.add(name);
+		stages.add(s);
+		busy = new long[stages.size()];
+		worst = new long[stages.size()];
+	}
+
+	/**
+	 * @return the stage that runs the timers
+	 */
+	public Stage timers() {
+		return new Stage() {
+			public void run( long now ) {
+				for( int i = 0; i < actions.size(); i++ ) {
+					if (now - due.get(i) < 0)
+						continue;
+					Runnable r = actions.get(i);
+					long every = repeat.get(i);
+					if (every > 0) {
+						due.set(i, due.get(i) + every * ((now - due.get(i)) / every + 1));
+					} else {
+						actions.remove(i);
+						due.remove(i);
+						repeat.remove(i);
+						i--;
+					}
+					r.run();
+				}
+			}
+		};
+	}
+
+	/**
+	 * run something (once) after a delay
+	 *
+	 * @param ms	delay (ms)
+	 * @param r		what to run
+	 */
+	public void after( int ms, Runnable r ) {
+		actions.add(r);
+		due.add(System.nanoTime() + ms * 1000000L);
+		repeat.add(0L);
+	}
+
+	/**
+	 * run something periodically
+	 *
+	 * @param ms	period (ms)
+	 * @param r		what to run
+	 */
+	public void every( int ms, Runnable r ) {
+		actions.add(r);
+		due.add(System.nanoTime() + ms * 1000000L);
+		repeat.add(ms * 1000000L);
+	}
+
+	/**
+	 * run ticks until stopped
+	 */
+	public void run() {
+		running = true;
+		long start = System.nanoTime();
+		long tick = 0;		// number of the current tick
+		while (running) {
+			// wait for the start of this tick
+			long now = System.nanoTime();
+			if (period > 0) {
+				long next = start + tick * period;
+				while (now < next) {
+					LockSupport.parkNanos(next - now);
+					now = System.nanoTime();
+				}
+				long late = now - next;
+				totalLate += late;
+				if (late > maxLate)
+					maxLate = late;
+			}
+
+			// run each of the stages
+			long t0 = now;
+			for( int i = 0; i < stages.size() && running; i++ ) {
+				stages.get(i).run(now);
+				long t1 = System.nanoTime();
+				busy[i] += t1 - t0;
+				if (t1 - t0 > worst[i])
+					worst[i] = t1 - t0;
+				t0 = t1;
+			}
+			ticks++;
+
+			// next tick (skipping any we have already overrun)
+			tick++;
+			if (period > 0) {
+				long behind = (t0 - start) / period - tick + 1;
+				if (behind > 0) {
+					skipped += behind;
+					tick += behind;
+				}
+			}
+		}
+	}
+
+	/**
+	 * stop ticking (at the end of the current stage)
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	/**
+	 * @return number of ticks run
+	 */
+	public long ticks() {
+		return ticks;
+	}
+
+	/**
+	 * print out tick and per-stage statistics
+	 */
+	public void report() {
+		if (ticks == 0)
+			return;
+		if (period > 0)
+			System.out.println(String.format(
+					"Scheduler: %d ticks of %.2fms, %d skipped (overruns), wake-up late avg %.3fms max %.3fms",
+					ticks, period / 1000000.0, skipped, totalLate / ticks / 1000000.0, maxLate / 1000000.0));
+		else
+			System.out.println("Scheduler: " + ticks + " ticks (free-running)");
+		for( int i = 0; i < stages.size(); i++ )
+			System.out.println(String.format("    %-10s avg %.3fms max %.3fms",
+					names.get(i), busy[i] / ticks / 1000000.0, worst[i] / 1000000.0));
+	}
+}
@@ -0,0 +1,96 @@
+package KinectedSpace;
+
+import ActiveSpace.Coord;
+
+/**
+ * A SensorFrame is everything a SensorSource knows at one instant:
+ * 		when it was taken
+ * 		which actors were present
+ * 		where each of them was (if it could tell)
+ *
+ *   The arrays are allocated once, so a frame can be refilled
+ *   (by a source) as many times as we like.
+ */
+public class SensorFrame {
+
+	public static final int MAX_ACTORS = 16;	// most actors in one frame
+
+	public long time;		// when the frame was taken (System.nanoTime)
+	public int count;		// number of actors in this frame
+	public int actor[];		// actor ID's (monotonically increasing)
+	public boolean valid[];	// do we have a position for this actor
+	public float x[], y[], z[];	// actor positions
+
+	public SensorFrame() {
+		actor = new int[MAX_ACTORS];
+		valid = new boolean[MAX_ACTORS];
+		x = new float[MAX_ACTORS];
+		y = new float[MAX_ACTORS];
+		z = new float[MAX_ACTORS];
+		count = 0;
+		time = 0;
+	}
+
+	/**
+	 * empty the frame, in preparation for a new set of actors
+	 *
+	 * @param when	time the frame was taken
+	 */
+	public void clear( long when ) {
+		time = when;
+		count = 0;
+	}
+
+	/**
+	 * add an actor to the frame
+	 *
+	 * @param id	actor ID
+	 * @param pos	position (or null if unknown)
+	 * @return		false if the frame is full
+	 */
+	public boolean add( int id, Coord pos ) {
+		if (pos == null)
+			return add(id, false, 0, 0, 0);
+		return add(id, true, pos.x, pos.y, pos.z);
+	}
+
+	/**
+	 * add an actor to the frame
+	 *
+	 * @param id	actor ID
+	 * @param known	do we have a position for it
+	 * @param px, py, pz	position
+	 * @return		false if the frame is full
+	 */
+	public boolean add( int id, boolean known, float px, float py, float pz ) {
+		if (count >= MAX_ACTORS)
+			return false;
+		actor[count] = id;
+		valid[count] = known;
+		x[count] = px;
+		y[count] = py;
+		z[count] = pz;
+		count++;
+		return true;
+	}
+
+	/**
+	 * copy another frame into this one
+	 */
+	public void copy( SensorFrame f ) {
+		time = f.time;
+		count = f.count;
+		System.arraycopy(f.actor, 0, actor, 0, count);
+		System.arraycopy(f.valid, 0, valid, 0, count);
+		System.arraycopy(f.x, 0, x, 0, count);
+		System.arraycopy(f.y, 0, y, 0, count);
+		System.arraycopy(f.z, 0, z, 0, count);
+	}
+
+	/**
+	 * @return a (new) Coord for the i'th actor's position (or null)
+	 */
+	public Coord position( int i ) {
+		return valid[i] ? new Coord(x[i], y[i], z[i]) : null;
+	}
+}
@@ -0,0 +1,48 @@
+package KinectedSpace;
+
+/**
+ * A SensorSource delivers a sequence of SensorFrames (who is in
+ * the room, and where they are) to the tracking loop.
+ *
+ *   The real source is a Kinect (OpenNISource), but a crowd can
+ *   also be simulated (SyntheticSource) or played back from a file
+ *   (ReplaySource), so that everything downstream of the sensor can
+ *   be run, profiled, and load-tested without one.  Real-time
+ *   sources are read on their own thread (see ThreadedSource).
+ */
+public interface SensorSource {
+
+	/**
+	 * wait for, and return, the next frame
+	 *
+	 * @param f	frame to be filled in
+	 * @return	false if there will be no more frames
+	 */
+	boolean next( SensorFrame f );
+
+	/**
+	 * actors arrive and leave between frames, and the source says so
+	 * (in order) through its event queue rather than leaving us to
+	 * work it out from the contents of successive frames
+	 * 
+	 * @return	queue of actor arrivals and departures
+	 */
+	ActorEvents events();
+
+	/**
+	 * @return	nominal frames per second (0 if as fast as possible)
+	 */
+	int fps();
+
+	/**
+	 * release the sensor
+	 */
+	void stop();
+
+	/**
+	 * print out whatever statistics the source keeps
+	 */
+	void report();
+
+	void debug( int level );
+}
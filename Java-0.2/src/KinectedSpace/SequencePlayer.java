@@ -0,0 +1,290 @@
+package KinectedSpace;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A SequencePlayer animates a directory of numbered image files
+ *
+ *   Decoding a frame takes longer than a frame period, so we cannot
+ *   decode them on demand.  Instead, a few decoder threads stay up to
+ *   AHEAD frames in front of the render clock, decoding into buffers
+ *   taken from a fixed pool (see ImageLoader.load, which reuses them).
+ *   On each render tick, ImageRenderer asks for the frame that is now
+ *   due.  If decoding has fallen behind, the clock does not wait for
+ *   it: late frames are skipped (and counted), and the decoders jump
+ *   forward to frames that can still make it.
+ */
+public class SequencePlayer {
+
+	private ImageLoader loader;		// image decoder
+	private int debugLevel;			// level of diagnostics
+
+	private File frames[];			// image files (in display order)
+	private int fps;				// frames per second
+	private boolean loop;			// repeat until stopped
+	private boolean playing;		// are we animating a sequence
+	private int generation;			// incremented with each new sequence
+	private long start;				// when frame 0 went up (ns, -1 = not yet)
+
+	private Frame slots[];			// decoded frames (by sequence # mod AHEAD)
+	private Frame showing;			// frame being displayed
+	private Frame previous;			// frame before that (may still be in use)
+	private BlockingQueue<Frame> pool;	// buffers ready to be decoded into
+	private long shown;				// sequence # of the displayed frame
+	private long horizon;			// frame that is due (or shown, if later)
+	private long nextDecode;		// next sequence # to be decoded
+
+	private long decoded;			// frames decoded
+	private long dropped;			// frames that missed their turn
+
+	private volatile boolean running;
+	private Thread decoders[];
+
+	private static final int AHEAD = 8;		// frames to decode ahead
+	private static final int THREADS = 2;	// decoder threads
+
+	/**
+	 * one pooled frame buffer
+	 */
+	private static class Frame {
+		BufferedImage img;	// decoded image
+		BufferedImage raw;	// (reusable) decoder output, before scaling
+		long seq;			// sequence # it holds
+		int generation;		// sequence it belongs to
+	}
+
+	/**
+	 * allocate the frame buffers and start the decoder threads
+	 *
+	 * @param loader	image decoder
+	 * @param width		display width
+	 * @param height	display height
+	 */
+	public SequencePlayer( ImageLoader loader, int width, int height ) {
+		this.loader = loader;
+		this.debugLevel = 1;
+		this.playing = false;
+		this.generation = 0;
+
+		int buffers = AHEAD + 2 + THREADS;
+		slots = new Frame[AHEAD];
+		pool = new ArrayBlockingQueue<Frame>(buffers);
+		for( int i = 0; i < buffers; i++ ) {
+			Frame f = new Frame();
+			f.img = loader.create(width, height);
+			pool.add(f);
+		}
+
+		running = true;
+		decoders = new Thread[THREADS];
+		for( int i = 0; i < THREADS; i++ ) {
+			decoders[i] = new Thread(new Runnable() {
+				public void run() { decode(); }
+			}, "SequencePlayer-" + i);
+			decoders[i].setDaemon(true);
+			decoders[i].start();
+		}
+	}
+
+	/**
+	 * set the level of diagnostic output
+	 */
+	public void debug( int level ) {
+		debugLevel = level;
+	}
+
+	/**
+	 * start animating a directory of image files
+	 *
+	 * @param dir	directory of (numbered) image files
+	 * @param rate	frames per second
+	 * @param loop	repeat until stopped
+	 * @return		whether or not there were any frames to play
+	 */
+	public synchronized boolean play( File dir, int rate, boolean loop ) {
+		File files[] = dir.listFiles(new FilenameFilter() {
+			public boolean accept(File d, String name) {
+				String n = name.toLowerCase();
+				return n.endsWith(".png") || n.endsWith(".jpg") ||
+						n.endsWith(".jpeg") || n.endsWith(".gif");
+			}
+		});
+		if (files == null || files.length == 0)
+			return false;
+		Arrays.sort(files);
+
+		stop();
+		// (showing and previous may still be being drawn ... they are
+		//  recycled, as usual, as the new sequence's frames replace them)
+
+		frames = files;
+		fps = (rate > 0) ? rate : 1;
+		this.loop = loop;
+		start = -1;
+		shown = -1;
+		horizon = -1;
+		nextDecode = 0;
+		playing = true;
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * stop animating (the last frame stays up)
+	 */
+	public synchronized void stop() {
+		if (playing && debugLevel > 0)
+			System.out.println("Sequence: " + decoded + " frames decoded, " + dropped + " dropped");
+		playing = false;
+		generation++;		// anything still being decoded is now stale
+		for( int i = 0; i < AHEAD; i++ ) {
+			recycle(slots[i]);
+			slots[i] = null;
+		}
+	}
+
+	/**
+	 * shut down the decoder threads
+	 */
+	public void shutdown() {
+		stop();
+		running = false;
+		for( int i = 0; i < THREADS; i++ )
+			decoders[i].interrupt();
+	}
+
+	/**
+	 * @return number of frames that missed their turn
+	 */
+	public synchronized long dropped() {
+		return dropped;
+	}
+
+	/**
+	 * @return number of frames decoded
+	 */
+	public synchronized long decoded() {
+		return decoded;
+	}
+
+	/**
+	 * render clock: return the frame that is due now
+	 *
+	 * @param now	current time (ns)
+	 * @return		new frame to be displayed (or null for no change)
+	 */
+	public synchronized BufferedImage frame( long now ) {
+		if (!playing)
+			return null;
+
+		// the clock starts when the first frame is ready
+		if (start < 0) {
+			if (slots[0] == null || slots[0].seq != 0)
+				return null;
+			start = now;
+		}
+		long due = ((now - start) * fps) / 1000000000L;
+		if (!loop && due >= frames.length) {
+			stop();
+			return null;
+		}
+		if (due > horizon) {
+			horizon = due;
+			notifyAll();		// decoders may now move ahead
+		}
+		if (due <= shown)
+			return null;
+
+		// find the latest decoded frame that is due, recycling any older ones
+		Frame best = null;
+		for( int i = 0; i < AHEAD; i++ ) {
+			Frame f = slots[i];
+			if (f == null || f.seq > due)
+				continue;
+			slots[i] = null;
+			if (best == null || f.seq > best.seq) {
+				recycle(best);
+				best = f;
+			} else
+				recycle(f);
+		}
+		if (best == null)
+			return null;		// hold the current frame
+
+		dropped += best.seq - shown - 1;
+		recycle(previous);		// the renderer is done with this one
+		previous = showing;
+		showing = best;
+		shown = best.seq;
+		return best.img;
+	}
+
+	/**
+	 * return a frame buffer to the pool
+	 */
+	private void recycle( Frame f ) {
+		if (f != null)
+			pool.offer(f);
+	}
+
+	/**
+	 * decoder thread: decode frames into pooled buffers
+	 */
+	private void decode() {
+		while (running) {
+			Frame f;
+			File file;
+			try {
+				f = pool.take();
+				synchronized (this) {
+					// wait until there is a frame within AHEAD of the clock
+					while (running && (!playing ||
+							nextDecode > horizon + AHEAD ||
+							(!loop && nextDecode >= frames.length)))
+						wait();
+					if (!running) {
+						recycle(f);
+						return;
+					}
+					// don't waste time on frames that are already late
+					if (nextDecode <= horizon)
+						nextDecode = horizon + 1;
+					f.seq = nextDecode++;
+					f.generation = generation;
+					file = frames[(int) (f.seq % frames.length)];
+				}
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			try {
+				f.raw = loader.load(file, f.img, f.raw);
+			} catch (Exception e) {
+				System.out.println("Error reading sequence frame: " + file);
+				e.printStackTrace();
+				synchronized (this) {
+					recycle(f);
+					stop();
+				}
+				continue;
+			}
+
+			synchronized (this) {
+				if (f.generation != generation || f.seq <= shown) {
+					recycle(f);		// stale or too late
+					continue;
+				}
+				int slot = (int) (f.seq % AHEAD);
+				if (slots[slot] != null)
+					recycle(slots[slot]);
+				slots[slot] = f;
+				decoded++;
+			}
+		}
+	}
+}
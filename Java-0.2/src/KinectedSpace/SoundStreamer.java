@@ -0,0 +1,257 @@
+package KinectedSpace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * A SoundStreamer plays a (long) sound file without loading it into memory
+ *
+ *   A Clip reads the entire sound into memory before it can start to play,
+ *   which is expensive for long ambient sound tracks.  A SoundStreamer
+ *   instead has a decoder thread that reads the file into a small ring of
+ *   reusable buffers, and a player thread that feeds those buffers to a
+ *   SourceDataLine.  Memory use is the same regardless of file length.
+ *
+ *   When looping, the decoder re-opens the file as soon as it hits the
+ *   end and keeps filling the same buffer, so there is no gap at the
+ *   loop point (a file with no samples in it ends the loop, rather
+ *   than being re-opened forever).  stop() flushes the line, so the
+ *   sound stops within one buffer period.
+ */
+public class SoundStreamer {
+
+	private File file;				// file we are playing
+	private MediaPack pack;			// or archive it comes from
+	private String name;			// name of sound in that archive
+	private boolean loop;			// repeat until stopped
+	private volatile boolean running;	// we have not been stopped
+	private Thread decoder;			// fills buffers from the file
+	private Thread player;			// feeds buffers to the line
+
+	private AudioFormat format;		// (PCM) format we play in
+	private SourceDataLine line;	// line we are playing on
+	private int chunkSize;			// bytes per buffer
+
+	private Chunk chunks[];			// the ring of buffers
+	private BlockingQueue<Chunk> empty;	// buffers ready to be filled
+	private BlockingQueue<Chunk> full;	// buffers ready to be played
+
+	private static final int RING = 4;		// number of buffers
+	private static final int PERIODS = 20;	// buffers per second
+
+	/**
+	 * one buffer's worth of sound
+	 */
+	private static class Chunk {
+		byte data[];
+		int length;		// valid bytes (0 means end of sound)
+	}
+
+	/**
+	 * open a sound file and allocate the line and buffers to play it
+	 *
+	 * @param file	sound file to play
+	 * @param loop	should we repeat until stopped
+	 */
+	public SoundStreamer( File file, boolean loop )
+			throws IOException, UnsupportedAudioFileException, LineUnavailableException {
+		this(file, null, null, loop);
+	}
+
+	/**
+	 * allocate the line and buffers to play a pre-decoded sound
+	 *
+	 * @param pack	archive containing the sound
+	 * @param name	name of the sound
+	 * @param loop	should we repeat until stopped
+	 */
+	public SoundStreamer( MediaPack pack, String name, boolean loop )
+			throws IOException, UnsupportedAudioFileException, LineUnavailableException {
+		this(null, pack, name, loop);
+	}
+
+	private SoundStreamer( File file, MediaPack pack, String name, boolean loop )
+			throws IOException, UnsupportedAudioFileException, LineUnavailableException {
+		this.file = file;
+		this.pack = pack;
+		this.name = name;
+		this.loop = loop;
+		this.running = false;
+
+		// figure out what format we will be playing it in
+		AudioInputStream in = open();
+		format = in.getFormat();
+		in.close();
+
+		// allocate a ring of buffers, each a whole number of frames
+		int frameSize = format.getFrameSize();
+		chunkSize = (int) (format.getFrameRate() / PERIODS) * frameSize;
+		if (chunkSize <= 0)
+			chunkSize = 4096;
+		chunks = new Chunk[RING];
+		empty = new ArrayBlockingQueue<Chunk>(RING);
+		full = new ArrayBlockingQueue<Chunk>(RING);
+		for( int i = 0; i < RING; i++ ) {
+			chunks[i] = new Chunk();
+			chunks[i].data = new byte[chunkSize];
+			empty.add(chunks[i]);
+		}
+
+		// the line only needs to buffer a couple of periods
+		DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+		line = (SourceDataLine) AudioSystem.getLine(info);
+		line.open(format, 2 * chunkSize);
+	}
+
+	/**
+	 * open the file (or archive entry) as a stream of PCM samples
+	 */
+	private AudioInputStream open() throws IOException, UnsupportedAudioFileException {
+		if (pack != null)
+			return pack.sound(name);
+		return pcm(AudioSystem.getAudioInputStream(file));
+	}
+
+	/**
+	 * convert an audio stream into (playable) PCM samples
+	 *
+	 * @param in	stream in its original encoding
+	 * @return		stream of PCM samples
+	 */
+	static AudioInputStream pcm( AudioInputStream in ) {
+		AudioFormat f = in.getFormat();
+		if (f.getEncoding() == AudioFormat.Encoding.PCM_SIGNED ||
+			f.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED)
+			return in;
+
+		// compressed formats have to be decoded to 16 bit PCM
+		AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+				f.getSampleRate(), 16, f.getChannels(), f.getChannels() * 2,
+				f.getSampleRate(), false);
+		return AudioSystem.getAudioInputStream(pcm, in);
+	}
+
+	/**
+	 * start the decoder and player threads
+	 */
+	public void start() {
+		running = true;
+		line.start();
+
+		decoder = new Thread(new Runnable() {
+			public void run() { decode(); }
+		}, "SoundStreamer-decode");
+		player = new Thread(new Runnable() {
+			public void run() { play(); }
+		}, "SoundStreamer-play");
+		decoder.setDaemon(true);
+		player.setDaemon(true);
+		player.setPriority(Thread.MAX_PRIORITY);
+		decoder.start();
+		player.start();
+	}
+
+	/**
+	 * stop playing (within one buffer period) and release the line
+	 */
+	public void stop() {
+		running = false;
+		line.stop();
+		line.flush();
+		if (decoder != null)
+			decoder.interrupt();
+		if (player != null)
+			player.interrupt();
+	}
+
+	/**
+	 * @return whether or not we are still playing
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * decoder thread: fill empty buffers from the file
+	 */
+	private void decode() {
+		AudioInputStream in = null;
+		try {
+			in = open();
+			long got = 0;		// bytes read since the file was (re)opened
+			while (running) {
+				Chunk c = empty.take();
+				c.length = 0;
+				while (running && c.length < chunkSize) {
+					int n = in.read(c.data, c.length, chunkSize - c.length);
+					if (n > 0) {
+						c.length += n;
+						got += n;
+					} else if (n < 0) {
+						in.close();
+						if (!loop || got == 0) {	// (an empty file would loop forever)
+							in = null;
+							break;
+						}
+						in = open();		// carry on filling this buffer
+						got = 0;
+					}
+				}
+				full.put(c);
+				if (in == null) {
+					if (c.length > 0) {		// tell the player we're done
+						c = empty.take();
+						c.length = 0;
+						full.put(c);
+					}
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			System.out.println("Error streaming sound file: " + (file == null ? name : file));
+			e.printStackTrace();
+			stop();
+		} finally {
+			try {
+				if (in != null)
+					in.close();
+			} catch (IOException e) {
+				// nothing we can do about it
+			}
+		}
+	}
+
+	/**
+	 * player thread: feed full buffers to the line
+	 */
+	private void play() {
+		try {
+			while (running) {
+				Chunk c = full.take();
+				if (c.length == 0)
+					break;		// end of (non-looped) sound
+				line.write(c.data, 0, c.length);
+				empty.put(c);
+			}
+			if (running)
+				line.drain();	// let the last buffer finish
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			running = false;
+			line.close();
+		}
+	}
+}
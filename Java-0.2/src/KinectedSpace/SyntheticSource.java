@@ -0,0 +1,223 @@
+package KinectedSpace;
+
+import java.util.Random;
+
+/**
+ * A SyntheticSource is a SensorSource that simulates a crowd
+ *
+ *   Each of a fixed number of actor slots holds a visitor who walks
+ *   in a straight line (bouncing off the edges of the area) for a
+ *   random length of time, then leaves and is replaced by a new
+ *   visitor (with a new actor ID) somewhere else.  Frames are paced
+ *   at the requested rate, or delivered as fast as possible (fps=0).
+ *   The walk is seeded, so a given set of parameters always produces
+ *   the same crowd.
+ *
+ *   To exercise ThreadedSource's watchdog, the source can also be made
+ *   to hang every so often (until it is restarted), as a Kinect does
+ *   when its USB link hiccups.  Like a restarted Kinect, it then forgets
+ *   who everybody is, and re-detects them under new numbers (which the
+ *   ActorRebinder should map back to the old ones).
+ */
+public class SyntheticSource implements SensorSource, Recoverable {
+
+	private static final float SPEED = 1000;	// walking speed (mm/s)
+	private static final int STAY = 20;			// average visit (seconds)
+
+	private int fps;			// frames per second (0 = max speed)
+	private long frames;		// frames to deliver (0 = forever)
+	private long frame;			// frames delivered so far
+	private long start;			// time the first frame was delivered
+	private float minX, maxX, minZ, maxZ;	// where the actors can walk
+	private Random random;		// (seeded) source of randomness
+
+	private int id[];			// actor in each slot
+	private float x[], z[];		// its position
+	private float dx[], dz[];	// its per-frame movement
+	private int left[];			// frames until it leaves
+	private int lastActor;		// last actor ID assigned
+	private ActorEvents events;	// arrivals and departures (our numbers)
+	private ActorRebinder rebinder;	// actor numbering across restarts
+	private SensorFrame last;	// the last frame we delivered
+
+	private long stallEvery;	// frames between injected stalls (0 = never)
+	private long stalledAt;		// frame at which we last stalled
+	private boolean hung;		// we are (pretending to be) stalled
+	private int restarts;		// number of restarts
+
+	private int debugLevel;
+
+	/**
+	 * create a simulated crowd
+	 *
+	 * @param actors	number of concurrent actors
+	 * @param fps		frames per second (0 = as fast as possible)
+	 * @param frames	number of frames to deliver (0 = forever)
+	 * @param seed		random number seed
+	 * @param x0, x1	x extent of the area to be walked
+	 * @param z0, z1	z extent of the area to be walked
+	 */
+	public SyntheticSource( int actors, int fps, long frames, long seed,
+			float x0, float x1, float z0, float z1 ) {
+		if (actors > SensorFrame.MAX_ACTORS)
+			actors = SensorFrame.MAX_ACTORS;
+		this.fps = fps;
+		this.frames = frames;
+		minX = x0;
+		maxX = x1;
+		minZ = z0;
+		maxZ = z1;
+		random = new Random(seed);
+		frame = 0;
+		lastActor = 0;
+		debugLevel = 0;
+		events = new ActorEvents();
+		rebinder = new ActorRebinder();
+		last = new SensorFrame();
+		stallEvery = 0;
+		stalledAt = -1;
+
+		id = new int[actors];
+		x = new float[actors];
+		z = new float[actors];
+		dx = new float[actors];
+		dz = new float[actors];
+		left = new int[actors];
+		for( int i = 0; i < actors; i++ )
+			arrive(i);
+	}
+
+	/**
+	 * a new visitor arrives in a slot
+	 */
+	private void arrive( int slot ) {
+		id[slot] = ++lastActor;
+		events.add(id[slot]);
+		x[slot] = minX + random.nextFloat() * (maxX - minX);
+		z[slot] = minZ + random.nextFloat() * (maxZ - minZ);
+		int rate = (fps > 0) ? fps : OpenNISource.FPS;
+		double angle = random.nextDouble() * 2 * Math.PI;
+		dx[slot] = (float) (SPEED / rate * Math.cos(angle));
+		dz[slot] = (float) (SPEED / rate * Math.sin(angle));
+		left[slot] = 1 + (int) (random.nextFloat() * 2 * STAY * rate);
+		if (debugLevel > 1)
+			System.out.println("   synthetic actor " + id[slot] + " arrives");
+	}
+
+	/**
+	 * hang (until restarted) every so often
+	 * 		(only when paced, as nothing watches an unpaced source)
+	 *
+	 * @param seconds	time between stalls (0 = never)
+	 */
+	public void stalls( int seconds ) {
+		if (seconds > 0 && fps == 0) {
+			System.out.println("Synthetic stalls need a frame rate (fps > 0) ... ignored");
+			return;
+		}
+		stallEvery = seconds * fps;
+	}
+
+	public boolean next( SensorFrame f ) {
+		if (frames > 0 && frame >= frames)
+			return false;
+
+		// time for a stall?
+		if (stallEvery > 0 && frame > 0 && frame % stallEvery == 0 && stalledAt != frame) {
+			stalledAt = frame;
+			if (debugLevel > 0)
+				System.out.println("   synthetic sensor stalls at frame " + frame);
+			synchronized(this) {
+				hung = true;
+				try {
+					while (hung)
+						wait();
+				} catch (InterruptedException e) {
+					// we're being replaced
+				}
+			}
+			return false;	// (our replacement carries on)
+		}
+
+		// wait until it is time for this frame
+		long now = System.nanoTime();
+		if (frame == 0)
+			start = now;
+		else if (fps > 0) {
+			long due = start + frame * 1000000000L / fps;
+			while (now < due) {
+				try {
+					Thread.sleep((due - now) / 1000000, (int) ((due - now) % 1000000));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+				now = System.nanoTime();
+			}
+		}
+		frame++;
+
+		// move everybody along (not while we are being restarted)
+		synchronized(this) {
+			f.clear(now);
+			for( int i = 0; i < id.length; i++ ) {
+				if (--left[i] <= 0) {
+					events.drop(id[i]);	// the old one is gone ...
+					arrive(i);			// and a new one is here
+				}
+				x[i] += dx[i];
+				z[i] += dz[i];
+				if (x[i] < minX || x[i] > maxX)
+					dx[i] = -dx[i];
+				if (z[i] < minZ || z[i] > maxZ)
+					dz[i] = -dz[i];
+				f.add(id[i], true, x[i], 0, z[i]);
+			}
+			rebinder.translate(events, f);
+			last.copy(f);
+		}
+		return true;
+	}
+
+	/**
+	 * come back from a stall, having forgotten who everybody was
+	 */
+	public boolean restart() {
+		synchronized(this) {
+			for( int i = 0; i < id.length; i++ ) {
+				id[i] = ++lastActor;
+				events.add(id[i]);
+			}
+			rebinder.restarted(last, System.nanoTime());
+			if (fps > 0)
+				start = System.nanoTime() - frame * 1000000000L / fps;
+			restarts++;
+			hung = false;		// (the stalled reader leaves once we let go)
+			notifyAll();
+		}
+		return true;
+	}
+
+	public ActorEvents events() {
+		return rebinder.events();
+	}
+
+	public int fps() {
+		return fps;
+	}
+
+	public void stop() {
+		frames = frame;		// no more frames
+	}
+
+	public void report() {
+		System.out.println("Synthetic crowd: " + frame + " frames, " + lastActor + " actors");
+		if (restarts > 0)
+			System.out.println("Synthetic sensor: " + restarts + " restarts, " + rebinder.kept() + 
+					" actors kept, " + rebinder.lost() + " lost");
+	}
+
+	public void debug( int level ) {
+		debugLevel = level;
+	}
+}
@@ -0,0 +1,192 @@
+package KinectedSpace;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.text.AttributedString;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A TextOverlay turns text files into ready-to-blit overlay images
+ *
+ *   File contents are cached (keyed by path, and re-read only when the
+ *   file's modification time or length changes), and the rendered
+ *   overlays are cached by (text, font, color, window size).  All of
+ *   the measuring and word-wrapping is done once, when the overlay is
+ *   built, so a repaint only has to draw a single image.
+ */
+public class TextOverlay {
+
+	private Map<String, FileText> files;	// cached file contents
+	private Map<String, BufferedImage> overlays;	// cached rendered text
+	private FontRenderContext frc;		// how we measure text
+
+	private static final int MAX_FILES = 32;	// cached text files
+	private static final int MAX_OVERLAYS = 8;	// cached rendered overlays
+	private static final int MARGIN = 10;		// left/right wrapping margin
+
+	/**
+	 * contents of a text file, and the version they came from
+	 */
+	private static class FileText {
+		long modified;		// file modification time
+		long length;		// file length
+		String text;		// file contents
+	}
+
+	public TextOverlay() {
+		files = lru(MAX_FILES);
+		overlays = lru(MAX_OVERLAYS);
+		frc = new FontRenderContext(null, true, true);
+	}
+
+	/**
+	 * @return a map that discards its least recently used entry beyond a limit
+	 */
+	private static <V> Map<String, V> lru( final int limit ) {
+		return new LinkedHashMap<String, V>(limit, 0.75F, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+				return size() > limit;
+			}
+		};
+	}
+
+	/**
+	 * return the contents of a text file (from cache if it is unchanged)
+	 *
+	 * @param file	text file to be read
+	 * @return		contents of that file
+	 * @throws IOException
+	 */
+	public String read( File file ) throws IOException {
+		String path = file.getPath();
+		long modified = file.lastModified();
+		long length = file.length();
+
+		FileText t = files.get(path);
+		if (t != null && t.modified == modified && t.length == length)
+			return t.text;
+
+		StringBuilder b = new StringBuilder((int) length);
+		Reader r = new InputStreamReader(new FileInputStream(file));
+		try {
+			char buf[] = new char[4096];
+			int n;
+			while ((n = r.read(buf)) > 0)
+				b.append(buf, 0, n);
+		} finally {
+			r.close();
+		}
+
+		t = new FileText();
+		t.modified = modified;
+		t.length = length;
+		t.text = b.toString();
+		files.put(path, t);
+		return t.text;
+	}
+
+	/**
+	 * return an overlay image for the specified text
+	 *
+	 * @param text	text to be rendered
+	 * @param font	font in which to render it
+	 * @param color	color in which to render it
+	 * @param size	size of the window it is to cover
+	 * @return		transparent window-sized image with centered, wrapped text
+	 */
+	public BufferedImage overlay( String text, Font font, Color color, Dimension size ) {
+		String key = font + "|" + color.getRGB() + "|" + size.width + "x" + size.height + "|" + text;
+		BufferedImage img = overlays.get(key);
+		if (img == null) {
+			img = render(text, font, color, size.width, size.height);
+			overlays.put(key, img);
+		}
+		return img;
+	}
+
+	/**
+	 * lay out and render text into a new transparent image
+	 *
+	 *	each line of the text is a paragraph, which is word-wrapped
+	 *	to the window width.  The block of text is centered in the
+	 *	window, with its lines left justified.
+	 */
+	private BufferedImage render( String text, Font font, Color color, int width, int height ) {
+		String paras[] = text.split("\r?\n", -1);
+		int lastPara = paras.length;
+		if (lastPara > 0 && paras[lastPara - 1].length() == 0)
+			lastPara--;		// ignore the final newline
+
+		// break the paragraphs into lines that fit the window
+		float wrap = Math.max(width - (2 * MARGIN), 1);
+		TextLayout lines[] = new TextLayout[16];
+		int numLines = 0;
+		float blockWidth = 0;
+		float blockHeight = 0;
+		TextLayout x = new TextLayout("X", font, frc);
+		float blankHeight = x.getAscent() + x.getDescent() + x.getLeading();
+		for( int p = 0; p < lastPara; p++ ) {
+			if (paras[p].length() == 0) {
+				if (numLines == lines.length)
+					lines = grow(lines);
+				lines[numLines++] = null;	// blank line
+				blockHeight += blankHeight;
+				continue;
+			}
+			AttributedString as = new AttributedString(paras[p]);
+			as.addAttribute(TextAttribute.FONT, font);
+			LineBreakMeasurer m = new LineBreakMeasurer(as.getIterator(), frc);
+			while (m.getPosition() < paras[p].length()) {
+				TextLayout l = m.nextLayout(wrap);
+				if (numLines == lines.length)
+					lines = grow(lines);
+				lines[numLines++] = l;
+				blockWidth = Math.max(blockWidth, l.getVisibleAdvance());
+				blockHeight += l.getAscent() + l.getDescent() + l.getLeading();
+			}
+		}
+
+		// render them, centered in the window
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = img.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+				RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+				RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+		g.setColor(color);
+		float col = (blockWidth > width) ? 0 : (width - blockWidth) / 2;
+		float row = (blockHeight > height) ? 0 : (height - blockHeight) / 2;
+		for( int i = 0; i < numLines; i++ ) {
+			if (lines[i] == null) {
+				row += blankHeight;
+				continue;
+			}
+			row += lines[i].getAscent();
+			lines[i].draw(g, col, row);
+			row += lines[i].getDescent() + lines[i].getLeading();
+		}
+		g.dispose();
+		return img;
+	}
+
+	private static TextLayout[] grow( TextLayout old[] ) {
+		TextLayout bigger[] = new TextLayout[old.length * 2];
+		System.arraycopy(old, 0, bigger, 0, old.length);
+		return bigger;
+	}
+}
@@ -0,0 +1,310 @@
+package KinectedSpace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A ThreadedSource reads another SensorSource on its own thread
+ *
+ *   Acquisition (e.g. waiting for the Kinect) runs on a dedicated
+ *   thread, so a slow trigger or media action in the tracking loop
+ *   can no longer delay the next read (and cause OpenNI to quietly
+ *   skip frames).  The two threads share a lock-free triple buffer:
+ *
+ *   	the acquisition thread fills the "back" frame, then swaps
+ *   	it with the "middle" frame (marking it fresh)
+ *
+ *   	the tracking thread swaps its "front" frame with the middle
+ *   	one whenever the middle one is fresh
+ *
+ *   The swaps are single atomic exchanges of a (frame index, fresh)
+ *   word, so neither thread ever waits for the other, and the tracking
+ *   thread always gets the newest complete frame.  A frame that is
+ *   replaced before the tracking thread gets to it is overwritten
+ *   (and counted).  The tracking thread only parks when it has
+ *   already consumed the newest frame.
+ *
+ *   A watchdog (if enabled) notes when frames stop arriving.  If a
+ *   Recoverable source goes quiet for too long, the watchdog abandons
+ *   the (presumably hung) acquisition thread, restarts the source on
+ *   its own thread, and starts a new acquisition thread.  Should the
+ *   old one ever come back, it finds it has been replaced, and quietly
+ *   exits without publishing anything.
+ */
+public class ThreadedSource implements SensorSource, Runnable {
+
+	private static final int FRESH = 4;		// middle has not been consumed
+	private static final int INDEX = 3;		// frame index mask
+	private static final int STOP_WAIT = 1000;	// ms to wait for the reader to stop
+
+	private SensorSource source;	// the real source
+	private SensorFrame frames[];	// the three buffers
+	private AtomicInteger middle;	// index of middle buffer (| FRESH)
+	private int back;				// buffer being filled (acquisition)
+	private int front;				// buffer being processed (tracking)
+
+	private volatile Thread reader;	// acquisition thread
+	private Object lock;			// publication vs restart
+	private volatile int generation;	// which acquisition thread is current
+	private volatile Thread waiter;	// tracking thread, if parked
+	private volatile boolean running;	// acquisition should continue
+	private volatile boolean ended;		// the source has no more frames
+
+	// counters (each is written by only one thread)
+	private volatile long produced;		// frames read from the source
+	private volatile long consumed;		// frames handed to tracking
+	private volatile long overwritten;	// frames replaced before use
+
+	// watchdog
+	private volatile long lastFrame;	// when the last frame was published
+	private long stallNs;				// how long before we call it a stall
+	private boolean recovering;			// waiting for the first frame after a restart
+	private long outage;				// when the stall started
+	private long stalls;				// stalls detected
+	private long recoveries;			// restarts that produced frames again
+	private long failures;				// restarts that failed
+	private long totalOutage;			// sum of stall-to-recovery times (ns)
+	private long maxOutage;				// worst stall-to-recovery time (ns)
+
+	/**
+	 * wrap a source and start reading it
+	 *
+	 * @param s	source to be read on its own thread
+	 */
+	public ThreadedSource( SensorSource s ) {
+		source = s;
+		frames = new SensorFrame[3];
+		for( int i = 0; i < 3; i++ )
+			frames[i] = new SensorFrame();
+		front = 0;
+		middle = new AtomicInteger(1);
+		back = 2;
+
+		lock = new Object();
+		running = true;
+		lastFrame = System.nanoTime();
+		startReader();
+	}
+
+	private void startReader() {
+		reader = new Thread(this, "SensorReader");
+		reader.setDaemon(true);
+		reader.setPriority(Thread.MAX_PRIORITY);
+		reader.start();
+	}
+
+	/**
+	 * acquisition thread: read frames and publish them
+	 */
+	public void run() {
+		int gen = generation;
+		while (running) {
+			boolean ok = source.next(frames[back]);
+			synchronized(lock) {
+				if (gen != generation)
+					return;		// we have been replaced
+				if (!ok)
+					break;
+				produced++;
+				lastFrame = System.nanoTime();
+				if (recovering)
+					recovered(lastFrame);
+				int old = middle.getAndSet(back | FRESH);
+				if ((old & FRESH) != 0)
+					overwritten++;
+				back = old & INDEX;
+			}
+
+			Thread t = waiter;
+			if (t != null)
+				LockSupport.unpark(t);
+		}
+		ended = true;
+		Thread t = waiter;
+		if (t != null)
+			LockSupport.unpark(t);
+	}
+
+	/**
+	 * start a watchdog, to restart the source if it stops delivering
+	 * frames (only Recoverable sources can be restarted)
+	 *
+	 * @param ms	how long without a frame is a stall
+	 */
+	public void watch( int ms ) {
+		if (!(source instanceof Recoverable))
+			return;
+		stallNs = ms * 1000000L;
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				watchdog();
+			}
+		}, "SensorWatchdog");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * watchdog thread: look for stalls, and restart the source
+	 */
+	private void watchdog() {
+		while (running && !ended) {
+			try {
+				Thread.sleep(stallNs / 4000000);
+			} catch (InterruptedException e) {
+				return;
+			}
+			long now = System.nanoTime();
+			long quiet = now - lastFrame;
+			if (quiet < stallNs || !running || ended)
+				continue;
+
+			// abandon the current reader (and the buffer it is filling)
+			Thread hung;
+			synchronized(lock) {
+				generation++;
+				frames[back] = new SensorFrame();
+				hung = reader;
+				if (!recovering) {		// (vs a restart that didn't take)
+					stalls++;
+					outage = lastFrame;
+					recovering = true;
+				}
+			}
+			System.out.println("Sensor stalled (no frames for " + quiet / 1000000 + "ms) ... restarting");
+			hung.interrupt();
+
+			if (((Recoverable) source).restart()) {
+				startReader();
+			} else {
+				failures++;
+				System.out.println("Sensor restart failed");
+			}
+			lastFrame = System.nanoTime();	// give it a chance before trying again
+		}
+	}
+
+	/**
+	 * (with the lock) the first frame after a restart has arrived
+	 */
+	private void recovered( long now ) {
+		recovering = false;
+		recoveries++;
+		long t = now - outage;
+		totalOutage += t;
+		if (t > maxOutage)
+			maxOutage = t;
+		System.out.println("Sensor recovered (after " + t / 1000000 + "ms)");
+	}
+
+	/**
+	 * @return stalls detected by the watchdog
+	 */
+	public long stalls() {
+		return stalls;
+	}
+
+	/**
+	 * @return stalls from which the source has recovered
+	 */
+	public long recoveries() {
+		return recoveries;
+	}
+
+	/**
+	 * take the newest frame (waiting only if we have already seen it)
+	 */
+	public boolean next( SensorFrame f ) {
+		while ((middle.get() & FRESH) == 0) {
+			if (ended && (middle.get() & FRESH) == 0)
+				return false;
+			waiter = Thread.currentThread();
+			if ((middle.get() & FRESH) == 0 && !ended)
+				LockSupport.park(this);
+			waiter = null;
+			if (Thread.interrupted())
+				return false;
+		}
+		front = middle.getAndSet(front) & INDEX;
+		consumed++;
+		f.copy(frames[front]);
+		return true;
+	}
+
+	/**
+	 * take the newest frame, if there is one we haven't seen
+	 * 		(without waiting, e.g. from a fixed-tick loop)
+	 *
+	 * @return	whether or not there was a new frame
+	 */
+	public boolean poll( SensorFrame f ) {
+		if ((middle.get() & FRESH) == 0)
+			return false;
+		front = middle.getAndSet(front) & INDEX;
+		consumed++;
+		f.copy(frames[front]);
+		return true;
+	}
+
+	/**
+	 * @return whether or not the source has run out (and we have had the last frame)
+	 */
+	public boolean ended() {
+		return ended && (middle.get() & FRESH) == 0;
+	}
+
+	/**
+	 * @return frames read from the source
+	 */
+	public long produced() {
+		return produced;
+	}
+
+	/**
+	 * @return frames handed to the tracking loop
+	 */
+	public long consumed() {
+		return consumed;
+	}
+
+	/**
+	 * @return frames that were replaced before they could be processed
+	 */
+	public long overwritten() {
+		return overwritten;
+	}
+
+	public ActorEvents events() {
+		return source.events();		// (already safe between the two threads)
+	}
+
+	public int fps() {
+		return source.fps();
+	}
+
+	public void stop() {
+		// let the acquisition thread finish its read before the source goes away
+		running = false;
+		try {
+			reader.join(STOP_WAIT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		source.stop();
+	}
+
+	public void report() {
+		System.out.println("Sensor: " + produced + " frames read, " + consumed +
+				" processed, " + overwritten + " overwritten");
+		if (stalls > 0)
+			System.out.println(String.format(
+					"Sensor watchdog: %d stalls, %d recoveries (outage avg %.0fms max %.0fms), %d failed restarts",
+					stalls, recoveries, (recoveries > 0) ? totalOutage / recoveries / 1000000.0 : 0.0,
+					maxOutage / 1000000.0, failures));
+		source.report();
+	}
+
+	public void debug( int level ) {
+		source.debug(level);
+	}
+}
@@ -0,0 +1,348 @@
+package KinectedSpace;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ActiveSpace.Coord;
+import ActiveSpace.MediaActions;
+import ActiveSpace.MediaCommand;
+
+/**
+ * A TraceMedia is a headless MediaActions sink, that records every call
+ *
+ *   Each call is stored as a fixed size binary record (nanoTime stamp,
+ *   op, detail, channel, file, parameter) in a buffer that is allocated
+ *   up front.  File and channel names are stored as indices into a name
+ *   table, so recording a call allocates nothing once a name has been
+ *   seen.  When the buffer fills, it is either flushed to the trace file
+ *   or (with no file) used as a ring, so that it holds the most recent
+ *   calls (which save() writes out, oldest first).
+ *
+ *   trace file format (big-endian):
+ *		header:	magic, version
+ *		records: time (ns since start), op (byte),
+ *				detail (byte: transition, or 1 for a looped sequence, or -1),
+ *				channel, file, param (ints)
+ *		trailer: time = -1, #names, names (modified UTF-8)
+ *
+ *   main() prints a trace file as text (e.g. to diff two rule sets,
+ *   in which case "untimed" leaves out the times, which never match).
+ */
+public class TraceMedia implements MediaActions {
+
+	public static final int MAGIC = 0x4b535452;	// "KSTR"
+	public static final int VERSION = 2;
+	private static final int RECORD = 8 + 1 + 1 + 4 + 4 + 4;	// bytes per record
+
+	private Trace trace;		// (shared) trace buffer
+	private int channel;		// our channel's name index (-1 = default)
+
+	/**
+	 * the buffer and name table shared by all channels
+	 */
+	private static class Trace {
+		ByteBuffer buf;				// record buffer
+		FileChannel out;			// where it is flushed (or null)
+		Map<String, Integer> ids;	// name -> index
+		List<String> names;			// index -> name
+		Map<String, TraceMedia> channels;	// per-channel sinks
+		long base;					// time the trace was started (ns)
+		long calls;					// calls recorded
+		long lost;					// calls overwritten (no file)
+		boolean wrapped;			// the ring has come round (no file)
+	}
+
+	/**
+	 * create a trace buffer (and perhaps a file to flush it to)
+	 *
+	 * @param records	number of records to buffer
+	 * @param file		trace file (or null to keep only the most recent)
+	 * @throws IOException
+	 */
+	public TraceMedia( int records, File file ) throws IOException {
+		trace = new Trace();
+		trace.buf = ByteBuffer.allocateDirect(records * RECORD);
+		trace.ids = new HashMap<String, Integer>();
+		trace.names = new ArrayList<String>();
+		trace.channels = new HashMap<String, TraceMedia>();
+		channel = -1;
+		trace.base = System.nanoTime();
+		if (file != null) {
+			trace.out = new FileOutputStream(file).getChannel();
+			ByteBuffer header = ByteBuffer.allocate(8);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.flip();
+			trace.out.write(header);
+		}
+	}
+
+	private TraceMedia( Trace t, int channel ) {
+		this.trace = t;
+		this.channel = channel;
+	}
+
+	/**
+	 * @return number of calls recorded
+	 */
+	public long calls() {
+		return trace.calls;
+	}
+
+	/**
+	 * @return number of (unflushed) calls that were overwritten
+	 */
+	public long lost() {
+		return trace.lost;
+	}
+
+	/**
+	 * @return index of a name in the name table
+	 */
+	private int id( String name ) {
+		if (name == null)
+			return -1;
+		Integer i = trace.ids.get(name);
+		if (i == null) {
+			i = trace.names.size();
+			trace.names.add(name);
+			trace.ids.put(name, i);
+		}
+		return i;
+	}
+
+	/**
+	 * append a record to the trace
+	 */
+	private void record( MediaCommand.Op op, int detail, String file, int param ) {
+		long now = System.nanoTime() - trace.base;
+		ByteBuffer b = trace.buf;
+		if (b.remaining() < RECORD) {
+			if (trace.out != null)
+				flush();
+			else {
+				b.position(0);		// round the ring
+				trace.wrapped = true;
+			}
+		}
+		if (trace.wrapped)
+			trace.lost++;		// (overwriting the oldest record)
+		b.putLong(now);
+		b.put((byte) op.ordinal());
+		b.put((byte) detail);
+		b.putInt(channel);
+		b.putInt(id(file));
+		b.putInt(param);
+		trace.calls++;
+	}
+
+	/**
+	 * write out the buffered records
+	 */
+	private void flush() {
+		ByteBuffer b = trace.buf;
+		b.flip();
+		try {
+			while (b.hasRemaining())
+				trace.out.write(b);
+		} catch (IOException e) {
+			System.out.println("Error writing action trace");
+			e.printStackTrace();
+			trace.out = null;
+		}
+		b.clear();
+	}
+
+	/**
+	 * flush the trace and write the name table
+	 */
+	public void close() throws IOException {
+		if (trace.out == null)
+			return;
+		flush();
+		trailer(trace.out);
+		trace.out = null;
+	}
+
+	/**
+	 * write the (most recent) records held in the ring to a trace file
+	 * 		(when there is no trace file to flush them to)
+	 *
+	 * @param file	trace file to be written
+	 * @throws IOException
+	 */
+	public void save( File file ) throws IOException {
+		FileChannel out = new FileOutputStream(file).getChannel();
+		ByteBuffer header = ByteBuffer.allocate(8);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.flip();
+		out.write(header);
+
+		// the oldest record is the next one to be overwritten
+		ByteBuffer b = trace.buf.duplicate();
+		int next = b.position();
+		if (trace.wrapped) {
+			b.limit(b.capacity() - b.capacity() % RECORD);
+			while (b.hasRemaining())
+				out.write(b);
+		}
+		b.limit(next);
+		b.position(0);
+		while (b.hasRemaining())
+			out.write(b);
+		trailer(out);
+	}
+
+	/**
+	 * write the end of records marker and the name table (and close the file)
+	 */
+	private void trailer( FileChannel out ) throws IOException {
+		DataOutputStream d = new DataOutputStream(Channels.newOutputStream(out));
+		d.writeLong(-1);
+		d.writeInt(trace.names.size());
+		for( int i = 0; i < trace.names.size(); i++ )
+			d.writeUTF(trace.names.get(i));
+		d.close();
+	}
+
+	public MediaActions channel( String name ) {
+		if (name == null)
+			return this;
+		TraceMedia c = trace.channels.get(name);
+		if (c == null) {
+			c = new TraceMedia(trace, id(name));
+			trace.channels.put(name, c);
+		}
+		return c;
+	}
+
+	/**
+	 * @return transition, as recorded
+	 */
+	private static int transition( Transition t ) {
+		return (t == null) ? -1 : t.ordinal();
+	}
+
+	public void displayImage( String filename ) {
+		record(MediaCommand.Op.SHOW, -1, filename, 0);
+	}
+
+	public void displayImage( String filename, Transition t, int msecs ) {
+		record(MediaCommand.Op.SHOW, transition(t), filename, msecs);
+	}
+
+	public void blankImage() {
+		record(MediaCommand.Op.BLANK, -1, null, 0);
+	}
+
+	public void blankImage( Transition t, int msecs ) {
+		record(MediaCommand.Op.BLANK, transition(t), null, msecs);
+	}
+
+	public void playSequence( String dirname, int fps, boolean loop ) {
+		record(MediaCommand.Op.ANIMATE, loop ? 1 : 0, dirname, fps);
+	}
+
+	public void stopSequence() {
+		record(MediaCommand.Op.STILL, -1, null, 0);
+	}
+
+	public void playSound( String filename ) {
+		record(MediaCommand.Op.PLAY, -1, filename, 0);
+	}
+
+	public void playSound( String filename, Coord where ) {
+		record(MediaCommand.Op.PLAY, -1, filename, (where == null) ? 0 : (int) where.x);
+	}
+
+	public void loopSound( String filename ) {
+		record(MediaCommand.Op.LOOP, -1, filename, 0);
+	}
+
+	public void silence() {
+		record(MediaCommand.Op.SILENCE, -1, null, 0);
+	}
+
+	public void displayText( String filename ) {
+		record(MediaCommand.Op.TEXT, -1, filename, 0);
+	}
+
+	public void clearText() {
+		record(MediaCommand.Op.CLEAR, -1, null, 0);
+	}
+
+	/**
+	 * print a trace file as text
+	 *
+	 * 	usage: TraceMedia trace-file [untimed]
+	 */
+	public static void main( String args[] ) throws IOException {
+		if (args.length < 1) {
+			System.out.println("usage: TraceMedia trace-file [untimed]");
+			return;
+		}
+
+		// read the records (we need the name table at the end)
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])));
+		List<long[]> records = new ArrayList<long[]>();
+		String names[];
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				System.out.println(args[0] + ": not an action trace");
+				return;
+			}
+			while (true) {
+				long time = in.readLong();
+				if (time < 0)
+					break;
+				long r[] = new long[6];
+				r[0] = time;
+				r[1] = in.readByte();
+				r[5] = in.readByte();
+				r[2] = in.readInt();
+				r[3] = in.readInt();
+				r[4] = in.readInt();
+				records.add(r);
+			}
+			names = new String[in.readInt()];
+			for( int i = 0; i < names.length; i++ )
+				names[i] = in.readUTF();
+		} catch (EOFException e) {
+			System.out.println(args[0] + ": truncated trace (not closed?)");
+			return;
+		} finally {
+			in.close();
+		}
+
+		boolean timed = args.length < 2 || !args[1].equals("untimed");
+		MediaCommand.Op ops[] = MediaCommand.Op.values();
+		Transition transitions[] = Transition.values();
+		for( int i = 0; i < records.size(); i++ ) {
+			long r[] = records.get(i);
+			MediaCommand.Op op = ops[(int) r[1]];
+			String detail = "-";
+			if (op == MediaCommand.Op.ANIMATE)
+				detail = (r[5] != 0) ? "loop" : "once";
+			else if (r[5] >= 0 && r[5] < transitions.length)
+				detail = transitions[(int) r[5]].toString();
+			System.out.println(String.format("%s%-8s %-9s %-8s %s %d",
+					timed ? String.format("%12.3fms ", r[0] / 1000000.0) : "", op, detail,
+					r[2] < 0 ? "-" : names[(int) r[2]],
+					r[3] < 0 ? "-" : names[(int) r[3]], r[4]));
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package KinectedSpace;
 
+import java.io.File;
+import java.io.IOException;
+
 import org.openni.IObservable;
 import org.openni.IObserver;
 import org.openni.License;
@@ -13,6 +16,7 @@ import org.openni.UserEventArgs;
 import org.openni.UserGenerator;
 
 import ActiveSpace.Coord;
+import ActiveSpace.DepthRecorder;
 
 /**
  * A UserSensor keeps track of user positions.
@@ -21,7 +25,6 @@ public class UserSensor {
 
     private Context context;				// session
     private DepthGenerator depthGen;		// depth generator (used by user generator)
-    @SuppressWarnings("unused")
 	private int width, height;				// sensor resolution
     private UserGenerator userGen;			// user generator
     
@@ -29,6 +32,10 @@ public class UserSensor {
     private int[] users;					// users currently being tracked
     private int userMap[];					// map kinect users to actor numbers
     private int lastUser;					// monotonic user counter
+    private Point3D points[];				// reusable batch for projective conversion
+    private ActorEvents events;				// actor arrivals and departures
+    private DepthRecorder recorder;			// where depth frames are recorded (if anywhere)
+    private volatile boolean running;		// the sensor started (and not yet released)
     
     private int debugLevel;					// level of debug output
 
@@ -54,6 +61,7 @@ public class UserSensor {
             userGen.getLostUserEvent().addObserver(new LostUserObserver());	
             
 			context.startGeneratingAll();
+			running = true;
         } catch (GeneralException e) {
         	System.out.println("Kinect initialization failure");
             e.printStackTrace();
@@ -63,6 +71,8 @@ public class UserSensor {
         users = null;
         userMap = new int[maxUsers];
         lastUser = 0;
+        points = new Point3D[0];
+        events = new ActorEvents();
     }
     
     /**
@@ -74,6 +84,7 @@ public class UserSensor {
 			int uid = args.getId();
 			if (uid < maxUsers) {
 				userMap[uid] = ++lastUser;
+				events.add(lastUser);
 				if (debugLevel > 0)
 					System.out.println("Detected new user[" + uid + "] = " + lastUser);
 			}
@@ -87,6 +98,9 @@ public class UserSensor {
 		public void update(IObservable<UserEventArgs> observable,
 				UserEventArgs args) {
 			int uid = args.getId();
+			if (uid >= maxUsers || userMap[uid] == 0)
+				return;
+			events.drop(userMap[uid]);
 			userMap[uid] = 0;
 			if (debugLevel > 0)
 				System.out.println("Lost user[" + uid + "]");
@@ -94,6 +108,14 @@ public class UserSensor {
 	}
 	
 
+    /**
+     * @return queue of actor arrivals and departures
+     * 		(filled by the new/lost user callbacks, during update)
+     */
+    public ActorEvents events() {
+    	return events;
+    }
+
     /**
      * @return number of users currently known to the sensor
      */
@@ -120,6 +142,9 @@ public class UserSensor {
 
 	/**
 	 * get center of mass coordinates for specified user
+	 * 		NOTE: these are projective (x,y in pixels, z in mm),
+	 * 		whereas regions are defined in real-world mm ...
+	 * 		getCoMs is what you probably want
 	 * 
 	 * @param	i	relative current user number
 	 * @return	center-of-mass coordinates (or null)
@@ -141,19 +166,169 @@ public class UserSensor {
 		return( new Coord(com.getX(), com.getY(), com.getZ()));
 	}
 
+	/**
+	 * get the (real-world, mm) center of mass of every current user
+	 * 
+	 * @param	xyz		x,y,z for each user
+	 * @param	valid	whether or not each user has a position
+	 * @return	number of users (no more than will fit in valid)
+	 */
+	public int getCoMs(float xyz[], boolean valid[]) {
+		int n = Math.min(numUsers(), Math.min(valid.length, xyz.length / 3));
+		for(int i = 0; i < n; i++) {
+			int o = 3 * i;
+			try {
+				Point3D com = userGen.getUserCoM(users[i]);
+				valid[i] = com != null && com.getZ() >= MIN_Z;
+				if (valid[i]) {
+					xyz[o] = com.getX();
+					xyz[o+1] = com.getY();
+					xyz[o+2] = com.getZ();
+				}
+			} catch (StatusException e) {
+				System.out.println("Error reading user " + i + "CoM");
+				e.printStackTrace();
+				valid[i] = false;
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * convert a batch of real-world positions to projective (pixel) coordinates
+	 * 		(in a single call to the depth generator)
+	 * 
+	 * @param	xyz	x,y,z for each position (converted in place)
+	 * @param	n	number of positions
+	 */
+	public void projective(float xyz[], int n) {
+		// the batch is only reallocated when the number of users changes
+		if (points.length != n) {
+			points = new Point3D[n];
+			for(int i = 0; i < n; i++)
+				points[i] = new Point3D();
+		}
+		for(int i = 0; i < n; i++)
+			points[i].setPoint(xyz[3*i], xyz[3*i+1], xyz[3*i+2]);
+		try {
+			Point3D p[] = depthGen.convertRealWorldToProjective(points);
+			for(int i = 0; i < n; i++) {
+				xyz[3*i] = p[i].getX();
+				xyz[3*i+1] = p[i].getY();
+				xyz[3*i+2] = p[i].getZ();
+			}
+		} catch (StatusException e) {
+			System.out.println("Error converting user positions");
+			e.printStackTrace();
+		}
+	}
+	
     /**
      * read a new depth and user frame
+     * 
+     * @return	whether or not we got one (if not, the users are unchanged)
      */
-	public void update() {
+	public boolean update() {
+		Context c = context;
+		UserGenerator u = userGen;
+		DepthGenerator d = depthGen;
+		if (c == null || u == null || d == null)
+			return false;		// released
 		try {
-			@SuppressWarnings("unused")
-			DepthMetaData depthMD = depthGen.getMetaData();
-			context.waitAnyUpdateAll();
-			users = userGen.getUsers();
+			c.waitAnyUpdateAll();
+			if (!running)
+				return false;	// released while we waited
+			users = u.getUsers();
+			if (recorder != null)
+				recorder.write(d.getMetaData().getData().createShortBuffer());
         } catch (GeneralException e) {
         	System.out.println("Error reading depth/users");
             e.printStackTrace();
+            return false;
+        } catch (IOException e) {
+        	System.out.println("Error recording depth frame ... recording stopped");
+        	e.printStackTrace();
+        	stopRecording();
         }
+		return true;
+	}
+	
+	/**
+	 * @return whether or not the sensor was successfully started
+	 */
+	public boolean running() {
+		return running;
+	}
+	
+	/**
+	 * take over from a sensor that is being replaced
+	 * 		(continuing its actor numbering and any recording)
+	 * 
+	 * @param old	the sensor being replaced
+	 */
+	public void adopt(UserSensor old) {
+		lastUser = old.lastUser;
+		recorder = old.recorder;
+		old.recorder = null;
+	}
+	
+	/**
+	 * shut the sensor down (e.g. because it has stopped responding)
+	 * 		(only the first call does anything)
+	 */
+	public synchronized void release() {
+		running = false;
+		Context c = context;
+		UserGenerator u = userGen;
+		DepthGenerator d = depthGen;
+		context = null;
+		userGen = null;
+		depthGen = null;
+		try {
+			if (c != null)
+				c.stopGeneratingAll();
+		} catch (GeneralException e) {
+			// it may well be past caring
+		}
+		if (u != null)
+			u.dispose();
+		if (d != null)
+			d.dispose();
+		if (c != null)
+			c.release();
+	}
+	
+	/**
+	 * record the depth frames we track users in
+	 * 
+	 * @param file	where to put them (see DepthRecorder)
+	 */
+	public void record(File file) {
+		try {
+			// the replay needs our projective to real-world conversion factors
+			Point3D p = depthGen.convertProjectiveToRealWorld(new Point3D(0, 0, 1000));
+			recorder = new DepthRecorder(file, width, height, -p.getX() / 500, p.getY() / 500);
+		} catch (Exception e) {
+			System.out.println("Unable to record depth frames to " + file);
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * finish off any recording in progress
+	 */
+	public void stopRecording() {
+		if (recorder == null)
+			return;
+		try {
+			recorder.close();
+			if (debugLevel > 0)
+				System.out.println("Recorded " + recorder.frames() + " depth frames, " + 
+						recorder.bytes() / 1024 + "KB");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		recorder = null;
 	}
 
 	 public void debug(int debug) {
@@ -12,59 +12,94 @@ import SimpleOpenNI.*;
  */
 public class KinectSensor {
 
+	public static final int MAX_USERS = 16;	// most users in a snapshot
+
 	private SimpleOpenNI kinect;
+	private IntVector userList;		// (reused) list of current users
+	private PVector position;		// (reused) CoM of one user
+
+	// the latest snapshot
+	private int count;				// number of users
+	private int ids[];				// their (stable) user ID's
+	private float xyz[];			// their positions (real world mm)
+	private boolean valid[];		// whether or not we know where they are
 
 	public KinectSensor(PApplet pa) {
 		kinect = new SimpleOpenNI(pa);
 		kinect.enableDepth();
 		kinect.enableUser(SimpleOpenNI.SKEL_PROFILE_NONE); 
+		
+		userList = new IntVector();
+		position = new PVector();
+		ids = new int[MAX_USERS];
+		xyz = new float[3 * MAX_USERS];
+		valid = new boolean[MAX_USERS];
+		count = 0;
 	}
 
 	/**
-	 * query the kinect for the location of the first/only player
+	 * update the kinect (once) and take a snapshot of all of its users
+	 * 		(everything else just reads from the latest snapshot)
 	 * 
-	 * @return (Coord) position of player
+	 * @return	number of users in the snapshot
+	 */
+	public int snapshot() {
+		kinect.update();
+		userList.clear();
+		kinect.getUsers(userList);
+		
+		count = (int) Math.min(userList.size(), MAX_USERS);
+		for( int i = 0; i < count; i++ ) {
+			ids[i] = userList.get(i);
+			kinect.getCoM(ids[i], position);	// real world, lens-relative mm
+			// kinect sometimes reports users it can no longer see
+			valid[i] = position.z > 0;
+			xyz[3*i] = position.x;
+			xyz[3*i+1] = position.y;
+			xyz[3*i+2] = position.z;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of players in the latest snapshot
+	 */
+	public int getNumberOfPlayers() {
+		return count;
+	}
+
+	/**
+	 * @param player	index into the latest snapshot
+	 * @return			the kinect's (stable) ID for that user
 	 */
-	public Coord getPlayerLocation() {
-		return( getPlayerLocation(0));
+	public int getPlayerId(int player) {
+		return ids[player];
 	}
 
 	/**
-	 * query the kinect for the location of a specified player
+	 * get the location of a player in the latest snapshot
 	 * 
-	 * @param player	(integer) player identifier
-	 * @return (Coord) position of a specified player
+	 * @param player	index into the latest snapshot
+	 * @param c			Coord to be filled in
+	 * @return			false if we don't know where the player is
 	 */
-	public Coord getPlayerLocation(int player) {
-		
-		// update and read in the user list from the kinect
-		kinect.update();
-		IntVector userList = new IntVector();
-		kinect.getUsers(userList);
-		
-		// get the current position of the specified user
-		if (userList.size() <= player) 
-			return null;  
-		int userId = userList.get(player);
-		PVector position = new PVector();
-		kinect.getCoM(userId, position);	// real world, lens-relative mm
-		
-		// kinect sometimes reports users it can no longer see
-		if (position.z > 0) 
-			return new Coord(position.x, position.y, position.z);
-		else
-			return null;
+	public boolean getPlayerLocation(int player, Coord c) {
+		if (player >= count || !valid[player])
+			return false;
+		c.x = xyz[3*player];
+		c.y = xyz[3*player+1];
+		c.z = xyz[3*player+2];
+		return true;
 	}
 
 	/**
-	 * return the number of players currently tracked by the kinect
+	 * get the location of a player in the latest snapshot
 	 * 
-	 * @return	(integer) number of players
+	 * @param player	index into the latest snapshot
+	 * @return (Coord) position of the player (or null)
 	 */
-	public int getNumberOfPlayers() {
-		kinect.update();
-		IntVector userList = new IntVector();
-		kinect.getUsers(userList);
-		return (int) (userList.size());
-	}	
+	public Coord getPlayerLocation(int player) {
+		Coord c = new Coord(0, 0, 0);
+		return getPlayerLocation(player, c) ? c : null;
+	}
 }
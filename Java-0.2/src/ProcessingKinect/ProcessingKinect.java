@@ -13,6 +13,10 @@ public class ProcessingKinect extends PApplet {
 	private KinectSensor k;		// kinect session
 	private Space s;			// space in which we are running
 	private Actor actors[];		// the known actors
+	private int users[];		// kinect user bound to each actor (-1 = none)
+	private boolean seen[];		// was each actor in the latest snapshot
+	private Coord posns[][];	// two (alternating) positions per actor
+	private int flip[];			// which one is next
 	private int maxActors;		// upper limit on number of actors
 	private	int debugLevel;		// how noisy we want to be
 	private boolean ignoreY;	// ignore Y values
@@ -89,8 +93,15 @@ public class ProcessingKinect extends PApplet {
 
 		// instantiate some actors (with no current positions)
 		actors = new Actor[maxActors];
+		users = new int[maxActors];
+		seen = new boolean[maxActors];
+		posns = new Coord[maxActors][2];
+		flip = new int[maxActors];
 		for (int i = 0; i < maxActors; i++ ) {
 			actors[i] = new Actor("actor-" + i, null);
+			users[i] = -1;
+			posns[i][0] = new Coord(0, 0, 0);
+			posns[i][1] = new Coord(0, 0, 0);
 		}
 	}
 
@@ -115,37 +126,48 @@ public class ProcessingKinect extends PApplet {
 			return;
 		}	
 
-		// how many players is the kinect tracking?
-		int n = (k == null) ? 0 : k.getNumberOfPlayers();
+		// take one snapshot of all the players the kinect is tracking
+		int n = (k == null) ? 0 : k.snapshot();
 		if (debugLevel > 2)
 			System.out.println("Kinect returns " + n + " players");
+		for (int i = 0; i < maxActors; i++)
+			seen[i] = false;
 		for (int i = 0; i < n; i++) {	// for each
-			Coord c = k.getPlayerLocation();	// get current recorded location
-			if (c == null) {
+			int slot = bind(k.getPlayerId(i));
+			if (slot < 0)
+				continue;				// more players than actors
+			seen[slot] = true;
+			
+			// alternate between two positions, since the actor keeps the last one
+			Actor a = actors[slot];
+			Coord c = posns[slot][flip[slot]];
+			if (!k.getPlayerLocation(i, c)) {
 				if (debugLevel > 2)
-					System.out.println("Player " + n + " has no position");
-			} else if (i < maxActors) {
-				if (ignoreY)
-					c.y = 0;			// ignore all Y values
-				Actor a = actors[i];			// FIXME binding of players to actors
-				if (a.lastPosition() == null && debugLevel > 1)
-					System.out.println("Actor " + a + " entered at " + c);
-				else if (debugLevel > 1)
-					System.out.println("    Actor " + a + " at " + c);
-				
-				s.processPosition(a, c);	// process the new position
-				a.lastPosition(c);			// update the known position
+					System.out.println("Player " + k.getPlayerId(i) + " has no position");
+				continue;
 			}
+			flip[slot] ^= 1;
+			if (ignoreY)
+				c.y = 0;			// ignore all Y values
+			if (a.lastPosition() == null && debugLevel > 1)
+				System.out.println("Actor " + a + " entered at " + c);
+			else if (debugLevel > 1)
+				System.out.println("    Actor " + a + " at " + c);
+			
+			s.processPosition(a, c);	// process the new position
+			a.lastPosition(c);			// update the known position
 		}
 		
-		// reset any actors no longer known to the kinect
-		for (int i = n; i < maxActors; i++ ) {
+		// release any actors no longer known to the kinect
+		for (int i = 0; i < maxActors; i++ ) {
+			if (users[i] < 0 || seen[i])
+				continue;
 			Actor a = actors[i];
-			if (a.lastPosition() != null) {
-				a.lastPosition(null);
-				if (debugLevel > 1)
-					System.out.println("Actor " + a + " has disappeared");
-			}
+			s.dropActor(a);
+			a.lastPosition(null);
+			users[i] = -1;
+			if (debugLevel > 1)
+				System.out.println("Actor " + a + " has disappeared");
 		}
 		
 		// FIXME - this goes completely away as soon as we have real actions
@@ -155,6 +177,29 @@ public class ProcessingKinect extends PApplet {
 		}
 	}
 	
+	/**
+	 * find (or assign) the actor bound to a kinect user
+	 * 
+	 * @param user	kinect user ID
+	 * @return		actor index (or -1 if they are all taken)
+	 */
+	private int bind(int user) {
+		int free = -1;
+		for (int i = 0; i < maxActors; i++) {
+			if (users[i] == user)
+				return i;
+			if (free < 0 && users[i] < 0)
+				free = i;
+		}
+		if (free >= 0) {
+			users[free] = user;
+			s.addActor(actors[free]);
+			if (debugLevel > 1)
+				System.out.println("Kinect user " + user + " is " + actors[free]);
+		}
+		return free;
+	}
+	
 	/**
 	 * determine whether or not a string is some form of "true"
 	 * 
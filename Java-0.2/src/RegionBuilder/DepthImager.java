@@ -0,0 +1,304 @@
+package RegionBuilder;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * A DepthImager turns a frame of depths into a grayscale image
+ * 		where full-bright is the closest report
+ * 		and full-dark is the farthest report
+ * 		(brightness is histogram equalized, so the image uses the
+ * 		whole gray scale whatever the range of depths in the scene)
+ *
+ *   A frame is processed in bulk passes over plain arrays:
+ *   	count:	per-depth pixel counts
+ *   	lut:	cumulative counts to a depth->brightness table
+ *   	map:	each pixel through that table
+ *   The table is indexed by the raw (unsigned) depth, so mapping a
+ *   pixel is a single lookup, with no range checks.
+ *
+ *   The depth distribution changes little from frame to frame, so
+ *   (in sampled mode) the counts can be taken from every Nth pixel,
+ *   and each new table blended into the last (an exponential moving
+ *   average), which also keeps the brightness from flickering.
+ *
+ *   The count and map passes are split across worker threads, each
+ *   with its own slice of the frame (and, for counting, its own
+ *   histogram, which are then merged).  The workers are started
+ *   once, and step through each frame together on a barrier, so
+ *   converting a frame allocates nothing.
+ *
+ *   main() times the stages on a synthetic scene.
+ */
+public class DepthImager {
+
+	public static final int MAX_Z = 10000;	// maximum distance to consider
+	private static final int MAX_THREADS = 4;	// (memory bandwidth bound)
+	public static final int SAMPLE = 7;		// sampled mode: count every 7th pixel
+	public static final float BLEND = 0.25f;	// sampled mode: weight of a new table
+
+	private int threads;			// number of workers
+	private Worker workers[];		// the workers
+	private CyclicBarrier step;		// keeps them in step with us
+	private int hist[];				// (merged) per-depth counts
+	private byte lut[];				// (unsigned) depth -> brightness
+	private float level[];			// (blended) brightness per depth
+	private int stride;				// count every stride'th pixel
+	private float blend;			// weight of a new table (1 = no blending)
+	private boolean primed;			// level has been set
+	private short depth[];			// frame being converted
+	private byte image[];			// image being produced
+
+	// per-stage timing
+	private long frames;
+	private long countNs, lutNs, mapNs;
+
+	/**
+	 * one slice of the frame, and its own histogram
+	 */
+	private class Worker extends Thread {
+		int from, to;		// pixels in this slice
+		int counts[];		// per-depth counts for this slice
+
+		Worker( int from, int to ) {
+			super("DepthImager");
+			this.from = from;
+			this.to = to;
+			counts = new int[MAX_Z];
+			setDaemon(true);
+		}
+
+		public void run() {
+			try {
+				while (true) {
+					step.await();		// frame available
+					count(depth, from, to, stride, counts);
+					step.await();		// counts done
+					step.await();		// table ready
+					map(depth, image, from, to);
+					step.await();		// image done
+				}
+			} catch (InterruptedException e) {
+				// we're being shut down
+			} catch (BrokenBarrierException e) {
+				// so are the others
+			}
+		}
+	}
+
+	/**
+	 * @param pixels	pixels per frame
+	 * @param n			number of threads (0 = one per processor)
+	 */
+	public DepthImager( int pixels, int n ) {
+		if (n <= 0)
+			n = Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS);
+		threads = n;
+		hist = new int[MAX_Z];
+		lut = new byte[65536];
+		level = new float[MAX_Z];
+		stride = 1;
+		blend = 1;
+		if (threads > 1) {
+			step = new CyclicBarrier(threads + 1);
+			workers = new Worker[threads];
+			for( int i = 0; i < threads; i++ ) {
+				workers[i] = new Worker(i * pixels / threads, (i + 1) * pixels / threads);
+				workers[i].start();
+			}
+		}
+	}
+
+	/**
+	 * build the table from a sample of the pixels, blended into the last
+	 *
+	 * @param n		count every n'th pixel (1 = all of them)
+	 * @param b		weight of each new table (1 = no blending)
+	 */
+	public void sampled( int n, float b ) {
+		stride = (n < 1) ? 1 : n;
+		blend = (b <= 0 || b > 1) ? 1 : b;
+		primed = false;
+	}
+
+	/**
+	 * count the pixels at each depth
+	 */
+	private static void count( short depth[], int from, int to, int stride, int counts[] ) {
+		Arrays.fill(counts, 0);
+		for( int i = from; i < to; i += stride ) {
+			int d = depth[i];
+			if (d > 0 && d < MAX_Z)
+				counts[d]++;
+		}
+	}
+
+	/**
+	 * map each pixel through the depth->brightness table
+	 */
+	private void map( short depth[], byte image[], int from, int to ) {
+		byte l[] = lut;
+		for( int i = from; i < to; i++ )
+			image[i] = l[depth[i] & 0xffff];
+	}
+
+	/**
+	 * turn cumulative counts into brightnesses (nearest is brightest)
+	 */
+	private void table() {
+		int points = 0;
+		for( int z = 1; z < MAX_Z; z++ )
+			points += hist[z];
+		if (points == 0) {
+			if (blend == 1)
+				Arrays.fill(lut, (byte) 0);
+			return;		// (when blending, hold the last table)
+		}
+		int cum = 0;
+		boolean smooth = blend < 1 && primed;
+		for( int z = 1; z < MAX_Z; z++ ) {
+			cum += hist[z];
+			float b = 256 * (1.0f - (cum / (float) points));
+			if (b > 255)			// (nothing nearer: 256 would wrap to black)
+				b = 255;
+			if (smooth)
+				b = level[z] += (b - level[z]) * blend;
+			else
+				level[z] = b;
+			lut[z] = (byte) (int) b;
+		}
+		primed = true;
+	}
+
+	/**
+	 * convert a frame of depths into a grayscale image
+	 *
+	 * @param d		depths (mm, 0 = unknown)
+	 * @param img	brightnesses (same number of pixels)
+	 */
+	public void convert( short d[], byte img[] ) {
+		long t0 = System.nanoTime();
+		long t1, t2;
+		if (threads <= 1) {
+			count(d, 0, d.length, stride, hist);
+			t1 = System.nanoTime();
+			table();
+			t2 = System.nanoTime();
+			depth = d;
+			map(d, img, 0, d.length);
+		} else {
+			depth = d;
+			image = img;
+			try {
+				step.await();		// go count
+				step.await();		// wait for the counts
+				t1 = System.nanoTime();
+				for( int z = 0; z < MAX_Z; z++ ) {
+					int sum = 0;
+					for( int w = 0; w < threads; w++ )
+						sum += workers[w].counts[z];
+					hist[z] = sum;
+				}
+				table();
+				t2 = System.nanoTime();
+				step.await();		// go map
+				step.await();		// wait for the image
+			} catch (Exception e) {
+				System.out.println("Depth image workers failed");
+				e.printStackTrace();
+				return;
+			}
+		}
+		long t3 = System.nanoTime();
+		countNs += t1 - t0;
+		lutNs += t2 - t1;
+		mapNs += t3 - t2;
+		frames++;
+	}
+
+	/**
+	 * @return number of worker threads
+	 */
+	public int threads() {
+		return threads;
+	}
+
+	/**
+	 * print out (and reset) the average time per stage
+	 */
+	public void report() {
+		if (frames == 0)
+			return;
+		System.out.println(String.format(
+				"Depth image (%d threads): count %.2fms, table %.2fms, map %.2fms per frame (%d frames)",
+				threads, countNs / frames / 1000000.0, lutNs / frames / 1000000.0,
+				mapNs / frames / 1000000.0, frames));
+		frames = 0;
+		countNs = 0;
+		lutNs = 0;
+		mapNs = 0;
+	}
+
+	/**
+	 * stop the worker threads
+	 */
+	public void shutdown() {
+		if (workers == null)
+			return;
+		for( int i = 0; i < threads; i++ )
+			workers[i].interrupt();
+		workers = null;
+		threads = 1;
+	}
+
+	/**
+	 * benchmark: convert a synthetic scene with 1 thread and with n,
+	 * 		then with a sampled (and blended) table, and compare images
+	 *
+	 * 	usage: DepthImager [frames [threads]]
+	 */
+	public static void main( String args[] ) {
+		int n = (args.length > 0) ? Integer.parseInt(args[0]) : 300;
+		int t = (args.length > 1) ? Integer.parseInt(args[1]) : 0;
+		int w = 640;
+		int h = 480;
+
+		// a floor and back wall, with noise and a few holes
+		Random r = new Random(0);
+		short d[] = new short[w * h];
+		for( int y = 0; y < h; y++ )
+			for( int x = 0; x < w; x++ )
+				d[y * w + x] = (short) ((r.nextInt(50) == 0) ? 0 :
+					((y > h / 2) ? 1500 + 8 * (h - y) : 4000) + r.nextInt(9));
+		byte img[][] = new byte[3][w * h];
+
+		int configs[] = { 1, t, t };
+		for( int c = 0; c < configs.length; c++ ) {
+			DepthImager di = new DepthImager(w * h, configs[c]);
+			if (c == 2) {
+				di.sampled(SAMPLE, BLEND);
+				System.out.print("sampled: ");
+			}
+			for( int i = 0; i < n; i++ )
+				di.convert(d, img[c]);		// warm up
+			di.report();
+			for( int i = 0; i < n; i++ )
+				di.convert(d, img[c]);
+			di.report();
+			di.shutdown();
+		}
+
+		long diff = 0;
+		int worst = 0;
+		for( int i = 0; i < w * h; i++ ) {
+			int e = Math.abs((img[0][i] & 0xff) - (img[2][i] & 0xff));
+			diff += e;
+			if (e > worst)
+				worst = e;
+		}
+		System.out.println(String.format("sampled vs full: mean difference %.2f, worst %d (of 255)",
+				(double) diff / (w * h), worst));
+	}
+}
@@ -7,8 +7,8 @@ import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
-import java.awt.image.Raster;
-import java.nio.ShortBuffer;
+import java.io.File;
+import java.io.IOException;
 
 import javax.swing.JFrame;
 import javax.swing.WindowConstants;
@@ -20,13 +20,17 @@ import org.openni.Context;
 import org.openni.DepthGenerator;
 import org.openni.DepthMetaData;
 import org.openni.GeneralException;
+import org.openni.StatusException;
 
 import ActiveSpace.Coord;
+import ActiveSpace.DepthRecorder;
+import ActiveSpace.DepthReplay;
+import ActiveSpace.Space;
 
 public class KinectViewer extends Component 
 			implements MouseListener, WindowListener {
 
-	private int click_pos;					// pixel index of last click
+	private volatile int click_pos;			// pixel index of last click
 	private Coord lastClick;				// real world coordinates
 	private int cursorX, cursorY;			// screen coordinates of cursor
 	private int dx;							// delta from frame to display
@@ -35,14 +39,23 @@ public class KinectViewer extends Component
     private Context context;				// session
     private DepthGenerator depthGen;		// depth generator
     private int width, height;				// sensor resolution
+    private DepthReplay replay;				// recorded frames (instead of a Kinect)
+    private short depth[];					// the current depth frame
+    private DepthRecorder recorder;			// where we are recording frames (if anywhere)
 
-    private byte[] imgbytes;				// per-pixel brightness map
-    private BufferedImage bimg;				// constructed display image
-    private float histogram[];				// brightness correction map
+    private BufferedImage images[];			// display images (front and back)
+    private byte pixels[][];				// their per-pixel brightnesses
+    private int front;						// image being displayed
+    private volatile boolean fresh;			// front image not yet painted
+    private DepthImager imager;				// depth to brightness conversion
+    private RegionOverlay overlay;			// region outlines (if any)
+    private Point3D points[];				// reusable batch for projective conversion
     
     private int debugLevel;					// how much debug output we want
+    private long acquireNs;					// time spent getting frames
+    private long frames;					// frames acquired
     
-    private static final int MAX_Z = 10000;	// maximum distance to consider
+    private static final int REPORT = 300;	// frames between timing reports
     private static final int C_HEIGHT = 10;	// cursor height
     private static final int C_WIDTH  = 10;	// cursor width
     
@@ -50,7 +63,20 @@ public class KinectViewer extends Component
     
     public KinectViewer()
     {
-        try {
+    	this(null);
+    }
+    
+    /**
+     * @param replay	recorded frames to be played (null for a Kinect)
+     */
+    public KinectViewer(DepthReplay replay)
+    {
+    	this.replay = replay;
+    	if (replay != null) {
+    		width = replay.width();
+    		height = replay.height();
+    		depth = replay.frame();
+    	} else try {
         	// create a context (hard-coded to eliminate dependence on cfg file)
         	context = new Context();
         	License license = new License("PrimeSense", "0KOIk2JeIBYClPWVnMoRKn5cdY4=");
@@ -67,14 +93,20 @@ public class KinectViewer extends Component
             System.exit(1);
         }
         
-        histogram = new float[MAX_Z];	// brightness correction histogram
+        if (depth == null)
+        	depth = new short[width*height];
+        imager = new DepthImager(width*height, 0);
         
         // allocate the image data capture and display buffers
-        imgbytes = new byte[width*height];
-        bimg = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-        DataBufferByte dataBuffer = new DataBufferByte(imgbytes, width*height);
-        Raster raster = Raster.createPackedRaster(dataBuffer, width, height, 8, null);
-        bimg.setData(raster);
+        //	(frames are converted straight into the back image's own pixels,
+        //	 which then becomes the front image, so nothing is copied)
+        images = new BufferedImage[2];
+        pixels = new byte[2][];
+        for( int i = 0; i < 2; i++ ) {
+        	images[i] = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        	pixels[i] = ((DataBufferByte) images[i].getRaster().getDataBuffer()).getData();
+        }
+        front = 0;
         
         // create a new frame for the viewer
         JFrame f = new JFrame("OpenNI Depth Viewer");
@@ -106,111 +138,206 @@ public class KinectViewer extends Component
     /**
      * read a new depth frame and generate a corresponding display
      *      (and associate a depth with any recent mouse click)
+     *      
+     * @return	whether or not there was a new frame
      */
-	public void update() {
+	public boolean update() {
 		try {
 			// get a new frame of depth data
-            DepthMetaData depthMD = depthGen.getMetaData();
-            context.waitAnyUpdateAll();
-            ShortBuffer depth = depthMD.getData().createShortBuffer();
- 
-            // calculate a brightness correction map
-            calcHist(depth);
+			long t0 = System.nanoTime();
+			if (replay != null) {
+				if (replay.next() == null && click_pos < 0)
+					return false;	// (at the end, we hold the last frame)
+			} else {
+	            DepthMetaData depthMD = depthGen.getMetaData();
+	            context.waitAnyUpdateAll();
+	            depthMD.getData().createShortBuffer().get(depth);
+	            if (recorder != null)
+	            	recorder.write(depth, System.nanoTime());
+			}
+			acquireNs += System.nanoTime() - t0;
  
             // process the depth data into per-pixel brightnesses
-            depth.rewind();
-            while(depth.remaining() > 0) {
-                int pos = depth.position();		// row-by-column pixel index
-                short dist = depth.get();		// sensor reported distance
-                imgbytes[pos] = (byte)histogram[dist];
-                
-                // if this was the click location, record its coordinates
-                if (click_pos >= 0 && click_pos == pos) {
-                	cursorY = (pos / width);
-                	cursorX = (pos % width);
-                	Point3D p = new Point3D(cursorX, cursorY, dist);
-                	Point3D w = depthGen.convertProjectiveToRealWorld(p);
-                	lastClick = new Coord(w.getX(), w.getY(), w.getZ());
-                	click_pos = -1;
-                	
-                	if (debugLevel > 0) {
-                		System.out.println("Set cursor <" + cursorX + "," + cursorY + 
-                				"> = " + lastClick);
-                	}
-                }
+            int back = 1 - front;
+            imager.convert(depth, pixels[back]);
+            if (overlay != null) {
+            	// re-project the region outlines if they have changed
+            	if (overlay.stale())
+            		overlay.build(this);
+            	overlay.apply(pixels[back]);
+            }
+            synchronized(this) {
+            	front = back;		// (not while it is being painted)
             }
+            fresh = true;
+            
+            // if there was a click, record its coordinates
+            if (click_pos >= 0 && click_pos < depth.length) {
+            	cursorY = (click_pos / width);
+            	cursorX = (click_pos % width);
+            	lastClick = realWorld(cursorX, cursorY, depth[click_pos]);
+            	
+            	if (debugLevel > 0) {
+            		System.out.println("Set cursor <" + cursorX + "," + cursorY + 
+            				"> = " + lastClick);
+            	}
+            }
+            click_pos = -1;
+            
+            if (++frames % REPORT == 0 && debugLevel > 1)
+            	report();
         } catch (GeneralException e) {
             e.printStackTrace();
+        } catch (IOException e) {
+        	System.out.println("Error recording depth frame ... recording stopped");
+        	e.printStackTrace();
+        	stopRecording();
         }
+		return true;
 	}
 	
-
 	/**
-	 * update the displayed image from our internal copy
+	 * repaint, if there is a new image we haven't displayed
+	 * 		(so that repaints never queue up faster than frames arrive)
 	 */
-	public void paint(Graphics g) {
-		
-		// place the cursor (if we have one)
-		if (cursorX >= 0 && cursorY >= 0) {
-			final byte BRIGHT = (byte) 255;
-			final byte DARK = (byte) 0;
-			final byte LOW = (byte) BRIGHT/3;
-			
-			for( int row = cursorY - C_HEIGHT; row <= cursorY + C_HEIGHT; row++) {
-				if (row >= 0 && row < height) {
-					int index = cursorX + (row * width);
-					imgbytes[index] = (imgbytes[index] > LOW) ? BRIGHT : DARK;
-				}
-			}
-			for( int col = cursorX - C_WIDTH; col <= cursorX + C_WIDTH; col++) {
-				if (col >= 0 && col < width) {
-					int index = col + (cursorY * width);
-					imgbytes[index] = (imgbytes[index] > LOW) ? BRIGHT : DARK;
-				}
+	public void refresh() {
+		if (fresh) {
+			fresh = false;
+			repaint();
+		}
+	}
+	
+	/**
+	 * draw the outlines of a space's regions over the depth view
+	 */
+	public void overlay(Space s) {
+		overlay = new RegionOverlay(s, width, height);
+	}
+	
+	/**
+	 * convert a batch of real-world positions to projective (pixel) coordinates
+	 * 		(in a single call to the depth generator)
+	 * 
+	 * @param	xyz	x,y,z for each position (converted in place)
+	 * @param	n	number of positions
+	 */
+	void projective(float xyz[], int n) {
+		if (replay != null) {
+			replay.projective(xyz, n);
+			return;
+		}
+		if (points == null || points.length != n) {
+			points = new Point3D[n];
+			for(int i = 0; i < n; i++)
+				points[i] = new Point3D();
+		}
+		for(int i = 0; i < n; i++)
+			points[i].setPoint(xyz[3*i], xyz[3*i+1], xyz[3*i+2]);
+		try {
+			Point3D p[] = depthGen.convertRealWorldToProjective(points);
+			for(int i = 0; i < n; i++) {
+				xyz[3*i] = p[i].getX();
+				xyz[3*i+1] = p[i].getY();
+				xyz[3*i+2] = p[i].getZ();
 			}
+		} catch (StatusException e) {
+			System.out.println("Error converting region positions");
+			e.printStackTrace();
 		}
-		
-		// turn the internal map into an image and display it
-        DataBufferByte dataBuffer = new DataBufferByte(imgbytes, width*height);
-        Raster raster = Raster.createPackedRaster(dataBuffer, width, height, 8, null);
-        bimg.setData(raster);
-        g.drawImage(bimg, 0, 0, null);
-    }
+	}
 	
 	/**
-	 * calculate a brightness correction matrix
-	 * 		where full-bright is the closest report
-	 * 		and full-dark is the farthest report
+	 * equalize brightness from a sample of each frame (see DepthImager)
+	 */
+	public void sampled() {
+		imager.sampled(DepthImager.SAMPLE, DepthImager.BLEND);
+	}
+	
+	/**
+	 * print out (and reset) per-stage frame processing times
+	 */
+	public void report() {
+		if (frames == 0 || debugLevel < 1)
+			return;
+		System.out.println(String.format("Depth frames: acquire %.2fms per frame",
+				acquireNs / frames / 1000000.0));
+		imager.report();
+		if (overlay != null)
+			overlay.report();
+		acquireNs = 0;
+		frames = 0;
+	}
+	
+	/**
+	 * convert a pixel (and its depth) to real world coordinates
+	 */
+	private Coord realWorld(int x, int y, int dist) throws GeneralException {
+		if (replay != null)
+			return replay.realWorld(x, y, dist);
+		Point3D w = depthGen.convertProjectiveToRealWorld(new Point3D(x, y, dist));
+		return new Coord(w.getX(), w.getY(), w.getZ());
+	}
+	
+	/**
+	 * start recording the depth frames we display
 	 * 
-	 * @param depth ... ShortBuffer full of per-pixel depth reports
+	 * @param file	where to put them (see DepthRecorder)
 	 */
-	 private void calcHist(ShortBuffer depth) {
-	        // figure out the relative frequency of each depth
-	        for (int i = 0; i < histogram.length; ++i)
-	            histogram[i] = 0;
-	        
-	        int points = 0;
-	        depth.rewind();
-	        while(depth.remaining() > 0) {
-	            short depthVal = depth.get();
-	            if (depthVal != 0) {
-	                histogram[depthVal]++;
-	                points++;
-	            }
-	        }
-	        
-	        // convert per-distance counts to cumulative (that and closer)
-	        for (int i = 1; i < histogram.length; i++) {
-	            histogram[i] += histogram[i-1];
-	        }
+	public void record(File file) {
+		if (replay != null)
+			return;		// we already have them
+		try {
+			// the replay needs our projective to real-world conversion factors
+			Point3D p = depthGen.convertProjectiveToRealWorld(new Point3D(0, 0, 1000));
+			recorder = new DepthRecorder(file, width, height, -p.getX() / 500, p.getY() / 500);
+		} catch (Exception e) {
+			System.out.println("Unable to record depth frames to " + file);
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * finish off any recording in progress
+	 */
+	public void stopRecording() {
+		if (recorder == null)
+			return;
+		try {
+			recorder.close();
+			if (debugLevel > 0)
+				System.out.println("Recorded " + recorder.frames() + " depth frames, " + 
+						recorder.bytes() / 1024 + "KB");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		recorder = null;
+	}
+	
 
-	        // normalize counts to an 8-bit brightness scale
-	        if (points > 0) {
-	            for (int i = 1; i < histogram.length; i++) {
-	                histogram[i] = (int)(256 * (1.0f - (histogram[i] / (float)points)));
-	            }
-	        }
-	    }
+	/**
+	 * display the current image (without clearing the window first)
+	 */
+	public void update(Graphics g) {
+		paint(g);
+	}
+
+	/**
+	 * display the current image (with region names and the cursor)
+	 */
+	public synchronized void paint(Graphics g) {
+		g.drawImage(images[front], 0, 0, null);
+		if (overlay != null)
+			overlay.label(g);
+		
+		// place the cursor (inverting whatever it is over)
+		if (cursorX >= 0 && cursorY >= 0) {
+			g.setColor(Color.WHITE);
+			g.setXORMode(Color.BLACK);
+			g.drawLine(cursorX, cursorY - C_HEIGHT, cursorX, cursorY + C_HEIGHT);
+			g.drawLine(cursorX - C_WIDTH, cursorY, cursorX + C_WIDTH, cursorY);
+			g.setPaintMode();
+		}
+    }
 	
 	/**
 	 * if there has been a recent click in the viewer, return and clear coordinates
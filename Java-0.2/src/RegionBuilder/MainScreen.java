@@ -18,7 +18,7 @@ public class MainScreen extends JFrame
 						implements	ActionListener, 
 									WindowListener {
 	
-	public boolean finished;	// have we been told to shut down
+	public volatile boolean finished;	// have we been told to shut down
 	
 	private Space space;		// space for regions and rules
 	private int debugLevel;		// desired level of diagnostic output
@@ -238,6 +238,13 @@ public class MainScreen extends JFrame
 		}
 	}
 	
+	/**
+	 * @return the space whose regions we are editing
+	 */
+	public Space space() {
+		return space;
+	}
+
 	/**
 	 * copy a set of room coordinates into the editor window
 	 * 
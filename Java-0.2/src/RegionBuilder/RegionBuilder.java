@@ -1,6 +1,15 @@
 package RegionBuilder;
 
+import java.awt.GraphicsEnvironment;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
 import ActiveSpace.Coord;
+import ActiveSpace.DepthReplay;
 
 /**
  * main class
@@ -13,22 +22,36 @@ public class RegionBuilder {
 	
 	private MainScreen gui;		// reference to the gui widgetry
 	private KinectViewer view;	// reference to the Kinect viewer window
+	
+	private static final int DEFAULT_REFRESH = 60;	// display refresh (Hz) if we can't tell
 
 	private static String usage[] = {
 		"RegionBuilder [switches] [regions-file]",
 		"    switches:",
 		"        --regions=regions-file",
+		"        --record=depth-file",
+		"        --replay=depth-file[,fast]",
+		"        --equalize=full|sampled",
 		"        --debug=#"
 	};
 	
 	public static void main(String args[]) {
 		String regionFile = null;
+		String recordFile = null;
+		String replayFile = null;
+		boolean sampled = false;	// sampled (cheaper) brightness equalization
 		int debugLevel = 1;		// major file events only
 		
 		// process the command line arguments (why isn't there a standard for this?)
 		for( int i = 0; i < args.length; i++ ) {
 			if (args[i].contains("regions=")) {
 				regionFile = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("record=")) {
+				recordFile = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("replay=")) {
+				replayFile = args[i].substring(args[i].indexOf('=') + 1);
+			} else if (args[i].contains("equalize=")) {
+				sampled = args[i].endsWith("sampled");
 			} else if (args[i].contains("debug=")) {
 				debugLevel = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
 			} else if (args[i].contains("help") || args[i].contains("?")) {
@@ -44,28 +67,83 @@ public class RegionBuilder {
 		
 		// instantiate an app and GUI and kick off the main loop
 		RegionBuilder app = new RegionBuilder();
-		app.view = new KinectViewer();
+		DepthReplay replay = null;
+		if (replayFile != null) {
+			boolean fast = replayFile.endsWith(",fast");
+			if (fast)
+				replayFile = replayFile.substring(0, replayFile.length() - 5);
+			try {
+				replay = new DepthReplay(new File(replayFile), !fast);
+			} catch (Exception e) {
+				System.out.println("Unable to replay depth frames from " + replayFile);
+				e.printStackTrace();
+				return;
+			}
+		}
+		app.view = new KinectViewer(replay);
 		app.view.debug(debugLevel);
+		if (sampled)
+			app.view.sampled();
+		if (recordFile != null)
+			app.view.record(new File(recordFile));
 		app.gui = new MainScreen( regionFile, debugLevel );
+		app.view.overlay(app.gui.space());
 		app.run();
 	}
 	
 	/**
 	 * main loop
+	 * 		this (main) thread reads and converts the depth frames,
+	 * 		while a Swing timer repaints (new ones) at the display rate
 	 */
 	public void run() {
+		int hz = refreshRate();
+		Timer painter = new Timer(1000 / hz, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				view.refresh();
+			}
+		});
+		painter.setCoalesce(true);
+		painter.start();
+		
 		while( !gui.finished) {
-			view.update();	// re-read the kinect
+			if (!view.update()) {	// re-read the kinect
+				try {				// nothing new (end of a replay)
+					Thread.sleep(1000 / hz);
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
 			
 			// check for position selections 
-			Coord c = view.lastClick();
+			final Coord c = view.lastClick();
 			if (c != null)
-				gui.setCoord(c);
-			
-			view.repaint();	// update the display
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						gui.setCoord(c);
+					}
+				});
 		}
+		painter.stop();
+		view.stopRecording();
+		view.report();
 		System.exit(0);
 	}
+	
+	/**
+	 * @return refresh rate (Hz) of the display
+	 */
+	private static int refreshRate() {
+		try {
+			int hz = GraphicsEnvironment.getLocalGraphicsEnvironment().
+					getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+			if (hz > 0)
+				return hz;
+		} catch (Exception e) {
+			// headless or unknown
+		}
+		return DEFAULT_REFRESH;
+	}
 
 	/**
 	 * print out a usage message
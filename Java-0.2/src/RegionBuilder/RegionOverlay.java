@@ -0,0 +1,202 @@
+package RegionBuilder;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+import ActiveSpace.Region;
+import ActiveSpace.Space;
+
+/**
+ * A RegionOverlay draws the outline of each of a space's regions
+ * (a horizontal ring at the height of its center) on the depth view.
+ *
+ *   Projecting and drawing thousands of regions every frame would cost
+ *   more than the depth view itself, so the outlines are projected (in
+ *   a single batch) only when the list of regions changes.  Regions that
+ *   are behind the sensor, or entirely outside the view, are culled, and
+ *   the rest are drawn (once) into a mask, which is reduced to the list
+ *   of pixels it covers.  Each frame, those pixels are inverted in the
+ *   depth image itself, which costs one pass over that list (however
+ *   many regions there are), and nothing at all when it is painted.
+ */
+public class RegionOverlay {
+
+	private static final int SIDES = 16;	// points per outline
+	private static final int LABELS = 64;	// most regions to label
+	private static final int MIN_Z = 50;	// anything closer is bogus
+	private static final Color COLOR = Color.GREEN;
+
+	private Space space;			// whose regions we draw
+	private int width, height;		// view size
+	private int version;			// space.changes() when last built
+	private boolean built;			// have we built them yet
+
+	// the visible outlines
+	private int outline[];			// pixels covered by them
+	private int labelX[], labelY[];	// where to put the region names
+	private String names[];			// (visible) region names
+	private int shown;				// number visible
+	private int total;				// number of regions
+
+	// drawing time
+	private long frames;
+	private long drawNs;
+
+	private static final float cos[] = new float[SIDES];
+	private static final float sin[] = new float[SIDES];
+	static {
+		for( int i = 0; i < SIDES; i++ ) {
+			cos[i] = (float) Math.cos(2 * Math.PI * i / SIDES);
+			sin[i] = (float) Math.sin(2 * Math.PI * i / SIDES);
+		}
+	}
+
+	/**
+	 * @param s			space whose regions are to be drawn
+	 * @param w, h		size of the view
+	 */
+	public RegionOverlay( Space s, int w, int h ) {
+		space = s;
+		width = w;
+		height = h;
+		built = false;
+		outline = new int[0];
+		names = new String[0];
+	}
+
+	/**
+	 * @return whether or not the regions have changed since the last build
+	 */
+	public boolean stale() {
+		return !built || space.changes() != version;
+	}
+
+	/**
+	 * project the region outlines to the view
+	 *
+	 * @param v		viewer (for the real-world to projective conversion)
+	 */
+	public void build( KinectViewer v ) {
+		int changes = space.changes();
+		Region r[] = space.regions();
+
+		// the ring around each region, in real-world coordinates
+		int n = r.length;
+		float xyz[] = new float[n * SIDES * 3];
+		for( int i = 0; i < n; i++ ) {
+			float x = r[i].getCenter().x;
+			float y = r[i].getCenter().y;
+			float z = r[i].getCenter().z;
+			float rad = r[i].getRadius();
+			for( int p = 0; p < SIDES; p++ ) {
+				int o = 3 * (i * SIDES + p);
+				xyz[o] = x + rad * cos[p];
+				xyz[o + 1] = y;
+				xyz[o + 2] = z + rad * sin[p];
+			}
+		}
+		v.projective(xyz, n * SIDES);
+
+		// draw the ones that are in front of us and (partly) in view
+		BufferedImage mask = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D g = mask.createGraphics();
+		g.setColor(Color.WHITE);
+		int lx[] = new int[n];
+		int ly[] = new int[n];
+		String name[] = new String[n];
+		int x[] = new int[SIDES];
+		int y[] = new int[SIDES];
+		int visible = 0;
+		for( int i = 0; i < n; i++ ) {
+			int x0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE;
+			int y0 = Integer.MAX_VALUE, y1 = Integer.MIN_VALUE;
+			boolean behind = false;
+			for( int p = 0; p < SIDES; p++ ) {
+				int o = 3 * (i * SIDES + p);
+				if (xyz[o + 2] < MIN_Z) {
+					behind = true;
+					break;
+				}
+				x[p] = (int) xyz[o];
+				y[p] = (int) xyz[o + 1];
+				x0 = Math.min(x0, x[p]);
+				x1 = Math.max(x1, x[p]);
+				y0 = Math.min(y0, y[p]);
+				y1 = Math.max(y1, y[p]);
+			}
+			if (behind || x1 < 0 || y1 < 0 || x0 >= width || y0 >= height)
+				continue;
+			g.drawPolygon(x, y, SIDES);
+			lx[visible] = x[SIDES / 4];
+			ly[visible] = y[SIDES / 4];
+			name[visible] = r[i].getName();
+			visible++;
+		}
+		g.dispose();
+
+		// reduce the mask to a list of pixels
+		byte m[] = ((DataBufferByte) mask.getRaster().getDataBuffer()).getData();
+		int count = 0;
+		for( int i = 0; i < m.length; i++ )
+			if (m[i] != 0)
+				count++;
+		int pix[] = new int[count];
+		count = 0;
+		for( int i = 0; i < m.length; i++ )
+			if (m[i] != 0)
+				pix[count++] = i;
+
+		synchronized(this) {
+			outline = pix;
+			labelX = lx;
+			labelY = ly;
+			names = name;
+			shown = visible;
+			total = n;
+		}
+		version = changes;
+		built = true;
+	}
+
+	/**
+	 * draw the outlines into a frame (inverting the pixels they cover)
+	 *
+	 * @param img	brightnesses
+	 */
+	public void apply( byte img[] ) {
+		long t0 = System.nanoTime();
+		int pix[] = outline;
+		for( int i = 0; i < pix.length; i++ ) {
+			int p = pix[i];
+			img[p] = (img[p] < 0) ? 0 : (byte) 255;		// (> 127 is dark)
+		}
+		drawNs += System.nanoTime() - t0;
+		frames++;
+	}
+
+	/**
+	 * name the outlines (if there aren't too many to read)
+	 */
+	public synchronized void label( Graphics g ) {
+		if (shown == 0 || shown > LABELS)
+			return;
+		g.setColor(COLOR);
+		for( int i = 0; i < shown; i++ )
+			g.drawString(names[i], labelX[i], labelY[i]);
+	}
+
+	/**
+	 * print out (and reset) the average drawing time
+	 */
+	public void report() {
+		if (frames == 0)
+			return;
+		System.out.println(String.format("Region overlay: %.3fms per frame, %d of %d regions visible (%d pixels)",
+				drawNs / frames / 1000000.0, shown, total, outline.length));
+		frames = 0;
+		drawNs = 0;
+	}
+}